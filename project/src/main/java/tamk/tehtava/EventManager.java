@@ -2,6 +2,7 @@ package tamk.tehtava;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 import tamk.tehtava.datamodel.Event;
@@ -110,10 +111,40 @@ public class EventManager {
      * @return list of events
      */
     public List<Event> getFilteredEvents(EventFilter filter) {
-        return this.getAllEvents().stream()
+        // Each provider turns the filter into its own lookups where it can,
+        // so that it doesn't need to go through all of its events.
+        List<Event> events = new ArrayList<>();
+        for (CompletableFuture<List<Event>> lookup : this.startLookups(this.eventProviders, filter)) {
+            events.addAll(lookup.join());
+        }
+        return events.stream()
                 .filter(event -> filter.accepts(event))
                 .toList();
     }
+
+    /**
+     * Starts looking up the events accepted by the filter from the providers.
+     * The remote providers are started first, so that their requests are
+     * under way while the local providers look up their events on the
+     * calling thread. The lookups are returned in the order of the providers.
+     *
+     * @param providers the providers
+     * @param filter the filter
+     * @return the lookups, completed with the lists of matching events
+     */
+    public List<CompletableFuture<List<Event>>> startLookups(List<EventProvider> providers, EventFilter filter) {
+        List<CompletableFuture<List<Event>>> lookups = new ArrayList<>();
+        for (EventProvider provider : providers) {
+            lookups.add(provider.isRemote() ? provider.getEventsAsync(filter) : null);
+        }
+        for (int i = 0; i < providers.size(); i++) {
+            if (lookups.get(i) == null) {
+                lookups.set(i, providers.get(i).getEventsAsync(filter));
+            }
+        }
+        return lookups;
+    }
+
     /**
      * Gets the event providers.
      *
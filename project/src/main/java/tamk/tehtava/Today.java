@@ -10,15 +10,24 @@ import java.time.MonthDay;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import tamk.tehtava.commands.AddEventCommand;
+import tamk.tehtava.commands.ImportCommand;
 import tamk.tehtava.commands.ListEvents;
 import tamk.tehtava.commands.ListProviders;
+import tamk.tehtava.commands.SearchCommand;
+import tamk.tehtava.providers.CSVDirectoryEventProvider;
 import tamk.tehtava.providers.CSVEventProvider;
+import tamk.tehtava.providers.SQLiteConnectionPool;
 import tamk.tehtava.providers.SQLiteEventProvider;
+import tamk.tehtava.providers.SQLiteProfile;
+import tamk.tehtava.providers.web.WebCircuitBreaker;
 import tamk.tehtava.providers.web.WebEventProvider;
+import tamk.tehtava.providers.web.WebRequestPolicy;
+import tamk.tehtava.providers.web.WebResponseCache;
 import tamk.tehtava.util.DatabaseInitializer;  // Import the DatabaseInitializer helper
 
 @Command(name = "today", 
-         subcommands = { ListProviders.class, ListEvents.class, AddEventCommand.class },
+         subcommands = { ListProviders.class, ListEvents.class, AddEventCommand.class, ImportCommand.class,
+                         SearchCommand.class },
          description = "Shows events from history and annual observations")
 public class Today {
     public Today() {
@@ -49,22 +58,58 @@ public class Today {
             System.out.println("SQLite database file does not exist; it will be created automatically.");
             DatabaseInitializer.ensureDatabaseExists();
         }
+        // Apply any schema changes made since the database was created.
+        DatabaseInitializer.migrateDatabase();
         
-        // Add a CSV event provider that reads from the CSV file.
+        // The way the CSV file is loaded can be chosen with the "today.csv.mode" system property.
+        CSVEventProvider.LoadMode csvMode = CSVEventProvider.LoadMode.CACHED;
+        String csvModeProperty = System.getProperty("today.csv.mode");
+        if (csvModeProperty != null) {
+            try {
+                csvMode = CSVEventProvider.LoadMode.valueOf(csvModeProperty.toUpperCase());
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Unknown CSV load mode '" + csvModeProperty + "', using " + csvMode);
+            }
+        }
+
+        // Add a CSV event provider that reads all the CSV files in the ".today" directory,
+        // such as events.csv and the singular-events.csv written by the addevent command.
         String csvProviderId = "standard";
-        manager.addEventProvider(new CSVEventProvider(csvPath.toString(), csvProviderId));
+        String csvDirectory = csvPath.getParent().toString();
+        CSVDirectoryEventProvider csvProvider = new CSVDirectoryEventProvider(csvDirectory, csvProviderId, csvMode);
+        manager.addEventProvider(csvProvider);
         // Try to add the same CSV provider again to avoid duplicate registration.
-        if (!manager.addEventProvider(new CSVEventProvider(csvPath.toString(), csvProviderId))) {
+        if (!manager.addEventProvider(csvProvider)) {
             System.err.printf("Event provider '%s' is already registered%n", csvProviderId);
         }
         
+        // The settings of the SQLite connections can be chosen with the "today.sqlite.profile" system property.
+        SQLiteProfile sqliteProfile = SQLiteProfile.DEFAULT;
+        String sqliteProfileProperty = System.getProperty("today.sqlite.profile");
+        if (sqliteProfileProperty != null) {
+            try {
+                sqliteProfile = SQLiteProfile.valueOf(sqliteProfileProperty.toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Unknown SQLite profile '" + sqliteProfileProperty + "', using " + sqliteProfile);
+            }
+        }
+
         // Add an SQLite event provider that reads from the SQLite database.
-        manager.addEventProvider(new SQLiteEventProvider(sqlitePath.toString()));
+        manager.addEventProvider(new SQLiteEventProvider(sqlitePath.toString(),
+                SQLiteConnectionPool.DEFAULT_SIZE, sqliteProfile));
         
         // Add a Web event provider that fetches events via HTTP from the given server.
         try {
             URI serverUri = new URI("https://todayserver-89bb2a1b2e80.herokuapp.com/");
-            manager.addEventProvider(new WebEventProvider(serverUri));
+            // The responses are cached in the ".today/cache/web" directory.
+            Path webCacheDirectory = Paths.get(homeDirectory, configDirectory, "cache", "web");
+            WebResponseCache webCache = new WebResponseCache(webCacheDirectory, WebResponseCache.DEFAULT_MAX_SIZE);
+            // The timeouts and retries can be set with the "today.web.*" system properties.
+            WebRequestPolicy webPolicy = WebRequestPolicy.fromProperties(System.getProperties(), WebRequestPolicy.DEFAULT);
+            // The circuit breaker keeps its state in a file, so that a run remembers the failures of the previous ones.
+            WebCircuitBreaker webCircuitBreaker = new WebCircuitBreaker(webCacheDirectory.resolve("circuit.properties"),
+                    WebCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, WebCircuitBreaker.DEFAULT_COOLDOWN);
+            manager.addEventProvider(new WebEventProvider(serverUri, webCache, webPolicy, webCircuitBreaker));
         } catch (Exception e) {
             System.err.println("Error creating WebEventProvider: " + e.getMessage());
         }
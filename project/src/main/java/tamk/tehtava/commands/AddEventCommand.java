@@ -4,32 +4,61 @@ import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
 import tamk.tehtava.EventFactory;
 import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.providers.CSVEventAppender;
 import tamk.tehtava.providers.SQLiteEventProvider;
+import tamk.tehtava.util.BulkEventLoader;
 
-import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.MonthDay;
 import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
-@Command(name = "addevent", description = "Adds a new event to a CSV or SQLite event provider.")
+@Command(name = "addevent", description = "Adds a new event, or many events from a file, to a CSV or SQLite event provider.")
 public class AddEventCommand implements Runnable {
 
-    @Option(names = {"-d", "--date"}, description = "Event date. Use full date (YYYY-MM-DD) for singular events or month-day (MM-DD) for annual events.", required = true)
+    @Option(names = {"-d", "--date"}, description = "Event date. Use full date (YYYY-MM-DD) for singular events or month-day (MM-DD) for annual events.")
     private String dateStr;
 
-    @Option(names = {"-D", "--description"}, description = "Event description.", required = true)
+    @Option(names = {"-D", "--description"}, description = "Event description.")
     private String description;
 
-    @Option(names = {"-c", "--category"}, description = "Event category.", required = true)
+    @Option(names = {"-c", "--category"}, description = "Event category.")
     private String categoryStr;
 
     // Optional provider identifier; default is "standard" (CSV), "sqlite" indicates database insertion.
-    @Option(names = {"p", "--provider"}, description = "Event provider identifier. (Default: standard)")
+    @Option(names = {"-p", "--provider"}, description = "Event provider identifier. (Default: standard)")
     private String providerIdentifier = "standard";
 
+    @Option(names = {"--fsync"}, description = "Force the event to disk before returning.")
+    private boolean fsync;
+
+    @Option(names = {"-f", "--from"}, description = "Add the events of a CSV or NDJSON file, or of standard input if '-'.")
+    private String fromFile;
+
+    @Option(names = {"--batch-size"}, description = "Number of events written at a time with --from. (Default: ${DEFAULT-VALUE})")
+    private int batchSize = BulkEventLoader.DEFAULT_BATCH_SIZE;
+
+    @Option(names = {"--write-behind"}, description = "With --from and the sqlite provider, add the events through the background writer, which commits them in transactions of its own.")
+    private boolean writeBehind;
+
     @Override
     public void run() {
+        if (fromFile != null) {
+            this.addEventsFrom(fromFile);
+            return;
+        }
+        if (dateStr == null || description == null || categoryStr == null) {
+            System.err.println("Date, description and category are required unless --from is used.");
+            return;
+        }
+
         boolean isSingular = false;
         LocalDate singularDate = null;
         MonthDay annualDate = null;
@@ -65,12 +94,13 @@ public class AddEventCommand implements Runnable {
         if (providerIdentifier.equalsIgnoreCase("sqlite")) {
             // For SQLite, insert the event using JDBC.
             String dbPath = homeDir + "/.today/events.sqlite3";
-            SQLiteEventProvider sqliteProvider = new SQLiteEventProvider(dbPath);
-            boolean success = sqliteProvider.addEvent(event);
-            if (success) {
-                System.out.println("Event added to SQLite database: " + event);
-            } else {
-                System.err.println("Failed to add event to SQLite database.");
+            try (SQLiteEventProvider sqliteProvider = new SQLiteEventProvider(dbPath)) {
+                boolean success = sqliteProvider.addEvent(event);
+                if (success) {
+                    System.out.println("Event added to SQLite database: " + event);
+                } else {
+                    System.err.println("Failed to add event to SQLite database.");
+                }
             }
         } else {
             // Default: add the event to a CSV file.
@@ -80,14 +110,101 @@ public class AddEventCommand implements Runnable {
             } else {
                 filePath = homeDir + "/.today/events.csv";
             }
-            // Prepare the CSV line. For annual events, the date is stored in the same format as created by EventFactory.
-            String csvLine = eventDateString + "," + description + "," + categoryStr;
-            try (FileWriter fw = new FileWriter(filePath, true)) {
-                fw.write(csvLine + "\n");
+            // The appender writes the line under a file lock, so concurrent additions don't interleave.
+            // For annual events, the date is stored in the same format as created by EventFactory.
+            String csvLine = CSVEventAppender.toCSVLine(event);
+            CSVEventAppender.Durability durability = fsync
+                    ? CSVEventAppender.Durability.SYNC : CSVEventAppender.Durability.BUFFERED;
+            try (CSVEventAppender appender = new CSVEventAppender(Path.of(filePath), durability, 1)) {
+                appender.append(event);
                 System.out.println("Event added to CSV file " + filePath + ": " + csvLine);
             } catch (IOException ioe) {
                 System.err.println("Error writing to CSV file: " + ioe.getMessage());
             }
         }
     }
+
+    /*
+       Adds the events of a file in batches: in one transaction per batch
+       with SQLite, or with one locked write per batch with CSV.
+       Reading the file and writing the events happen on separate threads.
+       With --write-behind, the SQLite events are queued with addEventAsync()
+       instead, and counted as they are committed.
+    */
+    private void addEventsFrom(String fileName) {
+        if (batchSize < 1) {
+            System.err.println("Invalid batch size: " + batchSize);
+            return;
+        }
+        String homeDir = System.getProperty("user.home");
+        BulkEventLoader loader = new BulkEventLoader(batchSize);
+        BulkEventLoader.Result result;
+
+        try (InputStream in = fileName.equals("-") ? System.in : Files.newInputStream(Path.of(fileName))) {
+            if (providerIdentifier.equalsIgnoreCase("sqlite")) {
+                try (SQLiteEventProvider sqliteProvider = new SQLiteEventProvider(homeDir + "/.today/events.sqlite3")) {
+                    if (writeBehind) {
+                        result = this.addEventsBehind(loader, in, sqliteProvider);
+                    } else {
+                        result = loader.load(in, sqliteProvider::addEvents);
+                    }
+                }
+            } else {
+                if (writeBehind) {
+                    System.err.println("--write-behind is only used with the sqlite provider.");
+                }
+                CSVEventAppender.Durability durability = fsync
+                        ? CSVEventAppender.Durability.SYNC : CSVEventAppender.Durability.BUFFERED;
+                try (CSVEventAppender singular = new CSVEventAppender(
+                             Path.of(homeDir, ".today", "singular-events.csv"), durability, batchSize);
+                     CSVEventAppender annual = new CSVEventAppender(
+                             Path.of(homeDir, ".today", "events.csv"), durability, batchSize)) {
+                    result = loader.load(in, batch -> {
+                        List<Event> singularEvents = new ArrayList<>();
+                        List<Event> annualEvents = new ArrayList<>();
+                        for (Event event : batch) {
+                            (event instanceof SingularEvent ? singularEvents : annualEvents).add(event);
+                        }
+                        singular.appendAll(singularEvents);
+                        annual.appendAll(annualEvents);
+                        return batch.size();
+                    });
+                }
+            }
+        } catch (IOException ioe) {
+            System.err.println("Error adding events from '" + fileName + "': " + ioe.getLocalizedMessage());
+            return;
+        }
+
+        System.out.printf("Added %d events in %.2f s (%.0f events/s), %d rejected%n",
+                result.added(), result.nanos() / 1e9, result.eventsPerSecond(), result.rejected());
+    }
+
+    /*
+       Queues the events of the input for the write-behind queue of the provider,
+       and waits until they have been written. The events that weren't committed,
+       because their category isn't in the database or their transaction failed,
+       are counted as rejected.
+    */
+    private BulkEventLoader.Result addEventsBehind(BulkEventLoader loader, InputStream in,
+                                                   SQLiteEventProvider provider) throws IOException {
+        long start = System.nanoTime();
+        LongAdder committed = new LongAdder();
+        BulkEventLoader.Result queued = loader.load(in, batch -> {
+            for (Event event : batch) {
+                provider.addEventAsync(event).whenComplete((added, error) -> {
+                    if (Boolean.TRUE.equals(added)) {
+                        committed.increment();
+                    }
+                });
+            }
+            return batch.size();
+        });
+        provider.flush();
+
+        long added = committed.sum();
+        long rejected = queued.rejected() + queued.added() - added;
+        // The load ends before the last events are written, so its own time would be too short.
+        return new BulkEventLoader.Result(added, rejected, System.nanoTime() - start);
+    }
 }
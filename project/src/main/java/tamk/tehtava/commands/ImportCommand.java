@@ -0,0 +1,66 @@
+package tamk.tehtava.commands;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import tamk.tehtava.providers.SQLiteEventImporter;
+import tamk.tehtava.util.BulkEventLoader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+
+@Command(name = "import", description = "Imports the events of a CSV or NDJSON file into the SQLite database.")
+public class ImportCommand implements Runnable {
+
+    @Parameters(paramLabel = "FILE", description = "CSV or NDJSON file to import, or '-' for standard input.")
+    private String fileName;
+
+    @Option(names = {"--database"}, description = "SQLite database file. (Default: ~/.today/events.sqlite3)")
+    private String databaseFile;
+
+    @Option(names = {"--batch-size"}, description = "Number of rows inserted at a time. (Default: ${DEFAULT-VALUE})")
+    private int batchSize = 10_000;
+
+    @Option(names = {"--durable"}, description = "Keep the database safe from crashes during the import, at the cost of speed.")
+    private boolean durable;
+
+    @Option(names = {"--keep-indexes"}, description = "Update the indexes for every row instead of creating them again after the import.")
+    private boolean keepIndexes;
+
+    @Override
+    public void run() {
+        if (batchSize < 1) {
+            System.err.println("Invalid batch size: " + batchSize);
+            return;
+        }
+        if (databaseFile == null) {
+            databaseFile = Path.of(System.getProperty("user.home"), ".today", "events.sqlite3").toString();
+        }
+
+        long start = System.nanoTime();
+        BulkEventLoader.Result result;
+        long imported;
+        try (InputStream in = fileName.equals("-") ? System.in : Files.newInputStream(Path.of(fileName));
+             SQLiteEventImporter importer = new SQLiteEventImporter(databaseFile, durable, !keepIndexes)) {
+            result = new BulkEventLoader(batchSize).load(in, batch -> {
+                try {
+                    return importer.insert(batch);
+                } catch (SQLException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+            });
+            // Creating the indexes again is part of the import.
+            imported = importer.commit();
+        } catch (IOException | SQLException e) {
+            System.err.println("Error importing events from '" + fileName + "': " + e.getLocalizedMessage());
+            return;
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Imported %d events in %.2f s (%.0f rows/s), %d rejected%n",
+                imported, seconds, imported / seconds, result.rejected());
+    }
+}
@@ -5,6 +5,7 @@ import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 import picocli.CommandLine.Command;
@@ -81,9 +82,11 @@ public class ListEvents implements Runnable {
                 System.err.println("No event provider found with identifier: " + providerIdentifier);
                 return;
             }
-            // Retrieve events only from the matching providers.
-            for (EventProvider provider : matchingProviders) {
-                filteredEvents.addAll(provider.getEventsOfDate(monthDay));
+            // Retrieve events only from the matching providers, which look up the events
+            // of the date, and of the category if given, without going through all of them.
+            // Remote providers fetch theirs while the local ones are looked up.
+            for (CompletableFuture<List<Event>> lookup : manager.startLookups(matchingProviders, filter)) {
+                filteredEvents.addAll(lookup.join());
             }
         } else {
             // Otherwise, get filtered events from all providers.
@@ -0,0 +1,87 @@
+package tamk.tehtava.commands;
+
+import java.time.MonthDay;
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Parameters;
+import tamk.tehtava.EventManager;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.providers.EventProvider;
+import tamk.tehtava.providers.SQLiteEventProvider;
+
+@Command(name = "search", description = "Searches the events of the SQLite database by the words in their descriptions, best matches first.")
+public class SearchCommand implements Runnable {
+
+    @Parameters(arity = "1..*", paramLabel = "WORD", description = "Words that the descriptions must contain. End a word with '*' to match words beginning with it.")
+    List<String> words;
+
+    @Option(names = {"-c", "--category"}, description = "Category of events to search")
+    String categoryOptionString;
+
+    @Option(names = {"-d", "--date"}, description = "Date of events to search in the format MM-dd")
+    String dateOptionString;
+
+    @Option(names = {"-n", "--limit"}, description = "Maximum number of events to show. (Default: ${DEFAULT-VALUE})")
+    int limit = 20;
+
+    @Override
+    public void run() {
+        Category category = null;
+        if (this.categoryOptionString != null) {
+            try {
+                category = Category.parse(this.categoryOptionString);
+            } catch (IllegalArgumentException iae) {
+                System.err.println("Invalid category string: '" + this.categoryOptionString + "'");
+                return;
+            }
+        }
+
+        MonthDay monthDay = null;
+        if (this.dateOptionString != null) {
+            try {
+                monthDay = MonthDay.parse("--" + this.dateOptionString);
+            } catch (DateTimeParseException dtpe) {
+                System.err.println("Invalid date string: '" + this.dateOptionString + "'");
+                return;
+            }
+        }
+
+        if (this.limit < 1) {
+            System.err.println("Invalid limit: " + this.limit);
+            return;
+        }
+
+        String query = SQLiteEventProvider.toMatchQuery(this.words);
+        if (query.isEmpty()) {
+            System.err.println("Nothing to search for");
+            return;
+        }
+
+        SQLiteEventProvider provider = null;
+        for (EventProvider p : EventManager.getInstance().getProviders()) {
+            if (p instanceof SQLiteEventProvider sqliteProvider) {
+                provider = sqliteProvider;
+            }
+        }
+        if (provider == null) {
+            System.err.println("No SQLite event provider found");
+            return;
+        }
+
+        long start = System.nanoTime();
+        List<Event> events = provider.search(query, monthDay, category, this.limit);
+        double millis = (System.nanoTime() - start) / 1e6;
+
+        for (Event event : events) {
+            String date = event instanceof SingularEvent singular
+                    ? singular.getDate().toString() : event.getMonthDay().toString().substring(2);
+            System.out.printf("%s: %s (%s)%n", date, event.getDescription(), event.getCategory());
+        }
+        System.out.printf("%d events found in %.1f ms%n", events.size(), millis);
+    }
+}
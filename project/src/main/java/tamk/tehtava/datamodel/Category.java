@@ -7,6 +7,12 @@ import java.util.Objects;
  * The category of an event, with primary and secondary categories.
  */
 public class Category implements Comparable<Category> {
+    /**
+     * Secondary category that matches any secondary category,
+     * as in "apple/*".
+     */
+    public static final String WILDCARD = "*";
+
     private String primary;
     private String secondary;
 
@@ -51,6 +57,31 @@ public class Category implements Comparable<Category> {
         return this.secondary;
     }
 
+    /**
+     * Tests if this category is a wildcard that matches
+     * all secondary categories of its primary category.
+     *
+     * @return true if the secondary category is the wildcard
+     */
+    public boolean isWildcard() {
+        return WILDCARD.equals(this.secondary);
+    }
+
+    /**
+     * Tests if the specified category matches this one.
+     * A wildcard category matches all categories with the same primary,
+     * otherwise the categories must be equal.
+     *
+     * @param category the category to test
+     * @return true if the category matches, false otherwise
+     */
+    public boolean matches(Category category) {
+        if (this.isWildcard()) {
+            return this.primary.equals(category.getPrimary());
+        }
+        return this.equals(category);
+    }
+
     /**
      * Returns a string representation of this category.
      * 
@@ -27,7 +27,7 @@ public class CategoryFilter extends EventFilter {
      */
     @Override
     public boolean accepts(Event event) {
-        return event.getCategory().equals(this.category);
+        return this.category.matches(event.getCategory());
     }
 
     /**
@@ -32,7 +32,7 @@ public class DateCategoryFilter extends DateFilter {
     @Override
     public boolean accepts(Event event) {
         boolean monthDayMatches = this.getMonthDay().equals(event.getMonthDay());
-        boolean categoryMatches = this.category.equals(event.getCategory());
+        boolean categoryMatches = this.category.matches(event.getCategory());
         boolean result = monthDayMatches && categoryMatches;
         //System.out.printf("DateCategoryFilter.accepts: %s && %s = %s - event: %s, filter: %s%n",
         //        monthDayMatches, categoryMatches, result, event, this);
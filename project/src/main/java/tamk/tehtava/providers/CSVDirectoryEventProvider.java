@@ -0,0 +1,294 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Provides the events of all CSV files in a directory, such as
+ * events.csv and singular-events.csv in the ".today" directory.
+ * Gzip-compressed CSV files ending with ".csv.gz" are included.
+ * Each file is a shard loaded by its own CSVEventProvider, and the
+ * shards are loaded concurrently. The events of all shards are
+ * answered from one merged day and category index, and the shards
+ * don't keep indexes of their own.
+ * On refresh, shards whose files haven't changed are reused as they are,
+ * and lines appended to a file are added to the merged index.
+ */
+public final class CSVDirectoryEventProvider implements EventProvider {
+    private static final String SHARD_PATTERN = "*.{csv,csv.gz}";
+
+    private final Path directory;
+    private final String identifier;
+    private final CSVEventProvider.LoadMode mode;
+    private final int threads;
+
+    // Shards by file name, in file name order.
+    private final Map<String, CSVEventProvider> shards;
+
+    // Merged events of all shards, not used in streaming mode.
+    private List<Event> events;
+    private EventIndex index;
+
+    /**
+     * Constructs a provider of the CSV files in a directory, loading them
+     * in the specified mode and using all available processors.
+     *
+     * @param directory the directory of the CSV files
+     * @param identifier the identifier of the provider
+     * @param mode how to load each file
+     */
+    public CSVDirectoryEventProvider(String directory, String identifier, CSVEventProvider.LoadMode mode) {
+        this(directory, identifier, mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a provider of the CSV files in a directory.
+     *
+     * @param directory the directory of the CSV files
+     * @param identifier the identifier of the provider
+     * @param mode how to load each file
+     * @param threads the number of files to load at the same time; in parallel
+     *                mode, the files being loaded share this many parsing threads
+     */
+    public CSVDirectoryEventProvider(String directory, String identifier,
+                                     CSVEventProvider.LoadMode mode, int threads) {
+        this.directory = Path.of(directory);
+        this.identifier = identifier;
+        this.mode = mode;
+        this.threads = threads;
+        this.shards = new TreeMap<>();
+
+        this.refresh();
+    }
+
+    /**
+     * Brings the events up to date with the directory. New files are
+     * loaded, files that are gone are dropped, and the files that are
+     * still there are refreshed, which only parses what was appended to them.
+     * The events of appended lines are added to the merged index; if files
+     * were added, dropped or loaded again, the merged index is rebuilt.
+     * A file that can't be loaded is reported, and tried again on the next refresh.
+     * If the directory can't be listed, the error is reported and the events are kept.
+     *
+     * @return true if the events changed, false otherwise
+     */
+    public synchronized boolean refresh() {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, SHARD_PATTERN)) {
+            for (Path file : stream) {
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException ioe) {
+            // Dropping the shards of every file for a failed listing would empty the provider.
+            System.err.println("Error listing CSV files in '" + this.directory + "': " + ioe.getLocalizedMessage());
+            if (this.events == null) {
+                this.merge();
+            }
+            return false;
+        }
+
+        Map<String, Path> found = new HashMap<>();
+        for (Path file : files) {
+            found.put(file.getFileName().toString(), file);
+        }
+        boolean rebuild = this.shards.keySet().retainAll(found.keySet());
+        List<Event> appended = new ArrayList<>();
+
+        // The files loaded at the same time share the threads, rather than each parsing with all of them.
+        long newFiles = found.keySet().stream().filter(name -> !this.shards.containsKey(name)).count();
+        int shardThreads = (int) Math.max(1, this.threads / Math.max(1, newFiles));
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, this.threads));
+        try {
+            Map<String, Future<CSVEventProvider>> loading = new HashMap<>();
+            Map<String, Future<Refreshed>> refreshing = new HashMap<>();
+            for (Map.Entry<String, Path> entry : found.entrySet()) {
+                CSVEventProvider shard = this.shards.get(entry.getKey());
+                if (shard == null) {
+                    String shardId = this.identifier + "/" + entry.getKey();
+                    Callable<CSVEventProvider> load = () -> new CSVEventProvider(
+                            entry.getValue().toString(), shardId, this.mode, shardThreads, false);
+                    loading.put(entry.getKey(), executor.submit(load));
+                } else {
+                    refreshing.put(entry.getKey(), executor.submit(() -> {
+                        List<Event> events = new ArrayList<>();
+                        return new Refreshed(shard.refresh(events::add), events);
+                    }));
+                }
+            }
+
+            // Each file is waited for on its own, so that an error in one doesn't drop the others.
+            for (Map.Entry<String, Future<CSVEventProvider>> entry : loading.entrySet()) {
+                CSVEventProvider shard = this.await(entry.getKey(), entry.getValue());
+                if (shard != null) {
+                    this.shards.put(entry.getKey(), shard);
+                    rebuild = true;
+                }
+            }
+            for (Map.Entry<String, Future<Refreshed>> entry : refreshing.entrySet()) {
+                Refreshed refreshed = this.await(entry.getKey(), entry.getValue());
+                if (refreshed != null) {
+                    rebuild |= refreshed.result() == CSVEventProvider.RefreshResult.RELOADED;
+                    appended.addAll(refreshed.appended());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        if (rebuild || this.events == null) {
+            this.merge();
+        } else if (!appended.isEmpty() && this.index != null) {
+            // A new list, so that lists returned before don't change under their callers.
+            List<Event> events = new ArrayList<>(this.events.size() + appended.size());
+            events.addAll(this.events);
+            events.addAll(appended);
+            this.events = events;
+            for (Event event : appended) {
+                this.index.add(event);
+            }
+        }
+        return rebuild || !appended.isEmpty();
+    }
+
+    // The result of refreshing a shard, with the events of its appended lines.
+    private record Refreshed(CSVEventProvider.RefreshResult result, List<Event> appended) {
+    }
+
+    // Waits for the loading or refreshing of a file, and reports it if it failed.
+    private <T> T await(String fileName, Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ee) {
+            System.err.println("Error loading CSV file '" + this.directory.resolve(fileName) + "': " + ee.getCause());
+        }
+        return null;
+    }
+
+    private void merge() {
+        if (this.mode == CSVEventProvider.LoadMode.STREAMING) {
+            this.events = List.of();
+            this.index = null;
+            return;
+        }
+
+        List<Event> merged = new ArrayList<>();
+        for (CSVEventProvider shard : this.shards.values()) {
+            merged.addAll(shard.getEvents());
+        }
+        this.events = merged;
+        this.index = new EventIndex(merged);
+    }
+
+    /**
+     * Gets the identifiers of the shards, one for each CSV file.
+     *
+     * @return list of shard identifiers
+     */
+    public synchronized List<String> getShardIdentifiers() {
+        return this.shards.values().stream()
+                .map(CSVEventProvider::getIdentifier)
+                .toList();
+    }
+
+    //
+    // EventProvider interface implementation
+    //
+
+    /**
+     * Gets all events of all shards, in file name order,
+     * followed by the events of lines appended since the last full merge.
+     *
+     * @return list of all events
+     */
+    @Override
+    public synchronized List<Event> getEvents() {
+        if (this.index == null) {
+            List<Event> result = new ArrayList<>();
+            for (CSVEventProvider shard : this.shards.values()) {
+                result.addAll(shard.getEvents());
+            }
+            return result;
+        }
+        return this.events;
+    }
+
+    /**
+     * Gets a stream of all events of all shards. In streaming mode
+     * the shards are read lazily, one after the other.
+     *
+     * @return stream of all events
+     */
+    @Override
+    public synchronized Stream<Event> streamEvents() {
+        if (this.index == null) {
+            List<CSVEventProvider> current = new ArrayList<>(this.shards.values());
+            return current.stream().flatMap(CSVEventProvider::streamEvents);
+        }
+        return this.events.stream();
+    }
+
+    @Override
+    public synchronized List<Event> getEventsOfCategory(Category category) {
+        if (this.index == null) {
+            List<Event> result = new ArrayList<>();
+            for (CSVEventProvider shard : this.shards.values()) {
+                result.addAll(shard.getEventsOfCategory(category));
+            }
+            return result;
+        }
+        return new ArrayList<>(this.index.getEventsOfCategory(category));
+    }
+
+    @Override
+    public synchronized List<Event> getEventsOfDate(MonthDay monthDay) {
+        if (this.index == null) {
+            List<Event> result = new ArrayList<>();
+            for (CSVEventProvider shard : this.shards.values()) {
+                result.addAll(shard.getEventsOfDate(monthDay));
+            }
+            result.sort(EventIndex.DAY_ORDER);
+            return result;
+        }
+        return new ArrayList<>(this.index.getEventsOfDate(monthDay));
+    }
+
+    @Override
+    public synchronized List<Event> getEventsOfDateAndCategory(MonthDay monthDay, Category category) {
+        if (this.index == null) {
+            List<Event> result = new ArrayList<>();
+            for (CSVEventProvider shard : this.shards.values()) {
+                result.addAll(shard.getEventsOfDateAndCategory(monthDay, category));
+            }
+            result.sort(EventIndex.DAY_ORDER);
+            return result;
+        }
+        return this.index.getEventsOfDateAndCategory(monthDay, category);
+    }
+
+    @Override
+    public String getIdentifier() {
+        return this.identifier;
+    }
+}
@@ -0,0 +1,216 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Appends events to a CSV file in batches. The events are buffered,
+ * and each batch is written with a single write while holding an
+ * advisory lock on the file, so that batches written by concurrent
+ * processes never interleave. Appenders of the same file in one process
+ * take turns before locking the file, as a process can't hold two locks
+ * on a file. With SYNC durability the file is forced to disk once per
+ * batch rather than once per event.
+ *
+ * The lines are written in the format read by CSVEventProvider,
+ * with fields quoted where necessary, and backslashes escaped.
+ */
+public class CSVEventAppender implements AutoCloseable {
+    /**
+     * How far a batch is written before flush() returns.
+     */
+    public enum Durability {
+        /** Written to the operating system, which writes it to disk later. */
+        BUFFERED,
+        /** Forced to disk, so that it survives a crash of the system. */
+        SYNC
+    }
+
+    /** The number of events buffered before they are written, by default. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // Monitors of the files written in this process, by absolute path.
+    private static final ConcurrentMap<Path, Object> FILE_MONITORS = new ConcurrentHashMap<>();
+
+    private final Path path;
+    private final Durability durability;
+    private final int batchSize;
+
+    private final StringBuilder buffer;
+    private int buffered;
+
+    /**
+     * Constructs an appender with buffered durability and the default batch size.
+     *
+     * @param path path of the CSV file, created if it doesn't exist
+     */
+    public CSVEventAppender(Path path) {
+        this(path, Durability.BUFFERED, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs an appender.
+     *
+     * @param path path of the CSV file, created if it doesn't exist
+     * @param durability how far each batch is written
+     * @param batchSize the number of events buffered before they are written
+     */
+    public CSVEventAppender(Path path, Durability durability, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.path = path;
+        this.durability = durability;
+        this.batchSize = batchSize;
+        this.buffer = new StringBuilder();
+    }
+
+    /**
+     * Adds an event to the current batch, writing the batch if it is full.
+     *
+     * @param event the event to append
+     * @throws IOException if writing the batch fails
+     */
+    public synchronized void append(Event event) throws IOException {
+        appendLine(this.buffer, event);
+        this.buffered++;
+        if (this.buffered >= this.batchSize) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Appends all the specified events as one batch, together with any
+     * events already buffered, and writes the batch.
+     *
+     * @param events the events to append
+     * @throws IOException if writing the batch fails
+     */
+    public synchronized void appendAll(Collection<? extends Event> events) throws IOException {
+        for (Event event : events) {
+            appendLine(this.buffer, event);
+        }
+        this.buffered += events.size();
+        this.flush();
+    }
+
+    /**
+     * Writes the buffered events to the file.
+     *
+     * @return the number of events written
+     * @throws IOException if writing fails, in which case the events stay buffered
+     */
+    public synchronized int flush() throws IOException {
+        if (this.buffered == 0) {
+            return 0;
+        }
+        byte[] lines = this.buffer.toString().getBytes(StandardCharsets.UTF_8);
+
+        // Another appender of the file in this process would get OverlappingFileLockException
+        // from lock() instead of waiting, so they wait for each other here first.
+        Object monitor = FILE_MONITORS.computeIfAbsent(this.path.toAbsolutePath().normalize(), p -> new Object());
+        synchronized (monitor) {
+            try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    long size = channel.size();
+                    ByteBuffer data;
+                    if (size > 0 && !endsWithNewline(channel, size)) {
+                        // Don't continue a last line that was left without a line break.
+                        data = ByteBuffer.allocate(lines.length + 1).put((byte) '\n').put(lines).flip();
+                    } else {
+                        data = ByteBuffer.wrap(lines);
+                    }
+
+                    long position = size;
+                    while (data.hasRemaining()) {
+                        position += channel.write(data, position);
+                    }
+                    if (this.durability == Durability.SYNC) {
+                        channel.force(false);
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+
+        int written = this.buffered;
+        this.buffer.setLength(0);
+        this.buffered = 0;
+        return written;
+    }
+
+    /**
+     * Writes the remaining buffered events.
+     *
+     * @throws IOException if writing fails
+     */
+    @Override
+    public void close() throws IOException {
+        this.flush();
+    }
+
+    /**
+     * Formats an event as a CSV line, without the line break.
+     * Singular events have a full date and annual events a month-day
+     * starting with "--", as expected by EventFactory.
+     *
+     * @param event the event
+     * @return the CSV line
+     */
+    public static String toCSVLine(Event event) {
+        StringBuilder line = new StringBuilder();
+        appendLine(line, event);
+        line.setLength(line.length() - 1);
+        return line.toString();
+    }
+
+    private static void appendLine(StringBuilder line, Event event) {
+        if (event instanceof SingularEvent singular) {
+            line.append(singular.getDate());
+        } else {
+            line.append(event.getMonthDay());
+        }
+        line.append(',');
+        appendField(line, event.getDescription());
+        line.append(',');
+        appendField(line, event.getCategory().toString());
+        line.append('\n');
+    }
+
+    /*
+       Quotes the field if it contains a separator, a quote, a line break or a backslash.
+       The readers take a backslash as an escape character, so it is doubled in the quotes.
+    */
+    private static void appendField(StringBuilder line, String field) {
+        boolean quoted = false;
+        for (int i = 0; i < field.length() && !quoted; i++) {
+            char c = field.charAt(i);
+            quoted = c == ',' || c == '"' || c == '\n' || c == '\r' || c == '\\';
+        }
+        if (!quoted) {
+            line.append(field);
+            return;
+        }
+        line.append('"').append(field.replace("\\", "\\\\").replace("\"", "\"\"")).append('"');
+    }
+
+    private static boolean endsWithNewline(FileChannel channel, long size) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+}
@@ -0,0 +1,391 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.AnnualEvent;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.util.MonthDayOrdinal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary cache of the parsed events of a CSV file and their indexes,
+ * stored next to the CSV file with the suffix ".cache". The cache
+ * records the size, modification time and checksum of the CSV file
+ * it was made of, and is only used if all of them still match.
+ *
+ * The cache file contains, in order:
+ * a header (magic, version, CSV size, CSV modification time, CSV checksum),
+ * the categories, the events, the events of each day in day order
+ * and the events of each category, the last two as event numbers.
+ */
+public class CSVEventCache {
+    /**
+     * The events of a cache and their index.
+     *
+     * @param events the events in file order
+     * @param index the index of the events
+     */
+    public record Contents(List<Event> events, EventIndex index) {
+    }
+
+    /**
+     * Identifies a version of the CSV file.
+     *
+     * @param size size of the file in bytes
+     * @param modified last modification time in milliseconds
+     * @param checksum CRC32C checksum of the contents
+     */
+    public record Stamp(long size, long modified, long checksum) {
+    }
+
+    private static final int MAGIC = 0x54445943;  // "TDYC"
+    private static final int VERSION = 1;
+
+    private static final byte ANNUAL = 0;
+    private static final byte SINGULAR = 1;
+
+    // Largest region of a file to map or checksum at a time.
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private final Path csvPath;
+    private final Path cachePath;
+
+    /**
+     * Constructs the cache of the specified CSV file.
+     *
+     * @param csvPath path of the CSV file
+     */
+    public CSVEventCache(Path csvPath) {
+        this.csvPath = csvPath;
+        this.cachePath = csvPath.resolveSibling(csvPath.getFileName() + ".cache");
+    }
+
+    /**
+     * Gets the path of the cache file.
+     *
+     * @return the cache path
+     */
+    public Path getCachePath() {
+        return this.cachePath;
+    }
+
+    /**
+     * Gets the stamp of the current version of the CSV file.
+     * Take the stamp before reading the CSV file, and store the
+     * cache with it, so that a change made in between makes the
+     * cache stale rather than wrong.
+     *
+     * @return the stamp
+     * @throws IOException if reading the CSV file fails
+     */
+    public Stamp stamp() throws IOException {
+        return this.stamp(Files.size(this.csvPath), Files.getLastModifiedTime(this.csvPath).toMillis());
+    }
+
+    /**
+     * Gets the stamp of the CSV file with an already known size and
+     * modification time. Only the given number of bytes are checksummed.
+     *
+     * @param size size of the file in bytes
+     * @param modified last modification time in milliseconds
+     * @return the stamp
+     * @throws IOException if reading the CSV file fails
+     */
+    public Stamp stamp(long size, long modified) throws IOException {
+        return new Stamp(size, modified, checksum(this.csvPath, size));
+    }
+
+    /**
+     * Loads the events from the cache, if the cache exists and
+     * was made of the version of the CSV file with the given stamp.
+     *
+     * @param stamp stamp of the current CSV file
+     * @return the cached events, or null if the cache can't be used
+     * @throws IOException if reading the cache fails
+     */
+    public Contents load(Stamp stamp) throws IOException {
+        if (!Files.exists(this.cachePath)) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(this.cachePath, StandardOpenOption.READ)) {
+            MappedInput in = new MappedInput(channel);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                return null;
+            }
+            if (!stamp.equals(new Stamp(in.getLong(), in.getLong(), in.getLong()))) {
+                return null;
+            }
+
+            // Each category has the lengths of its two names.
+            int categoryCount = in.getCount(2 * Integer.BYTES);
+            List<Category> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                categories.add(new Category(in.getString(), in.getString()));
+            }
+
+            // Each event has at least its kind, month-day, category and description length.
+            int eventCount = in.getCount(Byte.BYTES + Short.BYTES + 2 * Integer.BYTES);
+            List<Event> events = new ArrayList<>(eventCount);
+            for (int i = 0; i < eventCount; i++) {
+                byte kind = in.getByte();
+                int year = kind == SINGULAR ? in.getInt() : 0;
+                int ordinal = in.getShort();
+                Category category = categories.get(in.getIndex(categoryCount));
+                String description = in.getString();
+                if (kind == SINGULAR) {
+                    var monthDay = MonthDayOrdinal.toMonthDay(ordinal);
+                    events.add(new SingularEvent(
+                            LocalDate.of(year, monthDay.getMonth(), monthDay.getDayOfMonth()),
+                            description, category));
+                } else {
+                    events.add(new AnnualEvent(MonthDayOrdinal.toMonthDay(ordinal), description, category));
+                }
+            }
+
+            List<List<Event>> days = new ArrayList<>(MonthDayOrdinal.COUNT);
+            for (int i = 0; i < MonthDayOrdinal.COUNT; i++) {
+                days.add(readEventList(in, events));
+            }
+            Map<Category, List<Event>> byCategory = new HashMap<>();
+            for (Category category : categories) {
+                byCategory.put(category, readEventList(in, events));
+            }
+
+            return new Contents(events, new EventIndex(events, days, byCategory));
+        }
+    }
+
+    /**
+     * Stores the events and their index in the cache. The cache is written
+     * to a temporary file first and then moved in place, so a reader never
+     * sees a partially written cache.
+     *
+     * @param stamp stamp of the CSV file taken before reading the events
+     * @param events the events in file order
+     * @param index the index of the events
+     * @throws IOException if writing the cache fails
+     */
+    public void store(Stamp stamp, List<Event> events, EventIndex index) throws IOException {
+        Map<Category, Integer> categoryNumbers = new HashMap<>();
+        List<Category> categories = new ArrayList<>();
+        Map<Event, Integer> eventNumbers = new IdentityHashMap<>(events.size() * 2);
+        for (Event event : events) {
+            eventNumbers.put(event, eventNumbers.size());
+            if (!categoryNumbers.containsKey(event.getCategory())) {
+                categoryNumbers.put(event.getCategory(), categories.size());
+                categories.add(event.getCategory());
+            }
+        }
+
+        Path temporary = Files.createTempFile(this.cachePath.toAbsolutePath().getParent(), "events", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(stamp.size());
+                out.writeLong(stamp.modified());
+                out.writeLong(stamp.checksum());
+
+                out.writeInt(categories.size());
+                for (Category category : categories) {
+                    writeString(out, category.getPrimary());
+                    writeString(out, category.getSecondary());
+                }
+
+                out.writeInt(events.size());
+                for (Event event : events) {
+                    if (event instanceof SingularEvent singular) {
+                        out.writeByte(SINGULAR);
+                        out.writeInt(singular.getYear());
+                    } else {
+                        out.writeByte(ANNUAL);
+                    }
+                    out.writeShort(MonthDayOrdinal.of(event.getMonthDay()));
+                    out.writeInt(categoryNumbers.get(event.getCategory()));
+                    writeString(out, event.getDescription());
+                }
+
+                for (int i = 0; i < MonthDayOrdinal.COUNT; i++) {
+                    writeEventList(out, index.getEventsOfDate(MonthDayOrdinal.toMonthDay(i)), eventNumbers);
+                }
+                Map<Category, List<Event>> byCategory = index.getCategories();
+                for (Category category : categories) {
+                    writeEventList(out, byCategory.get(category), eventNumbers);
+                }
+            }
+            Files.move(temporary, this.cachePath,
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Deletes the cache file, if there is one.
+     *
+     * @throws IOException if deleting fails
+     */
+    public void delete() throws IOException {
+        try {
+            Files.delete(this.cachePath);
+        } catch (NoSuchFileException nsfe) {
+            // Nothing to delete.
+        }
+    }
+
+    /*
+       Computes the CRC32C checksum of the first bytes of the file.
+       CRC32C is computed with hardware instructions where they are available.
+    */
+    static long checksum(Path path, long size) throws IOException {
+        CRC32C crc = new CRC32C();
+        updateChecksum(crc, path, 0, size);
+        return crc.getValue();
+    }
+
+    /*
+       Adds a byte range of the file to the checksum, so that the checksum
+       of a file that grows can be continued from that of its beginning.
+    */
+    static void updateChecksum(CRC32C crc, Path path, long start, long end) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            end = Math.min(end, channel.size());
+            for (long position = start; position < end; position += MAX_WINDOW) {
+                crc.update(channel.map(FileChannel.MapMode.READ_ONLY, position,
+                        Math.min(MAX_WINDOW, end - position)));
+            }
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeEventList(DataOutputStream out, List<Event> events,
+                                       Map<Event, Integer> eventNumbers) throws IOException {
+        out.writeInt(events.size());
+        for (Event event : events) {
+            out.writeInt(eventNumbers.get(event));
+        }
+    }
+
+    private static List<Event> readEventList(MappedInput in, List<Event> events) throws IOException {
+        int count = in.getCount(Integer.BYTES);
+        List<Event> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            result.add(events.get(in.getIndex(events.size())));
+        }
+        return result;
+    }
+
+    /*
+       Reads values from a file that is mapped one window at a time,
+       mapping the next window whenever a value would cross the end.
+       Counts and lengths are checked against the rest of the file
+       before anything is allocated for them, so that a damaged cache
+       fails with an IOException rather than running out of memory.
+    */
+    private static class MappedInput {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart;
+        private byte[] scratch = new byte[256];
+
+        MappedInput(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+            this.map(0);
+        }
+
+        byte getByte() throws IOException {
+            this.ensure(Byte.BYTES);
+            return this.window.get();
+        }
+
+        short getShort() throws IOException {
+            this.ensure(Short.BYTES);
+            return this.window.getShort();
+        }
+
+        int getInt() throws IOException {
+            this.ensure(Integer.BYTES);
+            return this.window.getInt();
+        }
+
+        long getLong() throws IOException {
+            this.ensure(Long.BYTES);
+            return this.window.getLong();
+        }
+
+        /*
+           Reads the number of the following items, which take at least
+           the specified number of bytes each.
+        */
+        int getCount(int bytesEach) throws IOException {
+            int count = this.getInt();
+            long position = this.windowStart + this.window.position();
+            if (count < 0 || (long) count * bytesEach > this.size - position) {
+                throw new IOException("Damaged cache file: count " + count + " at " + position);
+            }
+            return count;
+        }
+
+        // Reads the number of an item of a list of the specified size.
+        int getIndex(int bound) throws IOException {
+            int index = this.getInt();
+            if (index < 0 || index >= bound) {
+                throw new IOException("Damaged cache file: item " + index + " of " + bound);
+            }
+            return index;
+        }
+
+        String getString() throws IOException {
+            int length = this.getCount(Byte.BYTES);
+            if (length > this.scratch.length) {
+                this.scratch = new byte[Math.max(length, this.scratch.length * 2)];
+            }
+            this.ensure(length);
+            this.window.get(this.scratch, 0, length);
+            return new String(this.scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (this.window.remaining() < bytes) {
+                long position = this.windowStart + this.window.position();
+                if (this.size - position < bytes) {
+                    throw new IOException("Unexpected end of cache file");
+                }
+                this.map(position);
+            }
+        }
+
+        private void map(long position) throws IOException {
+            this.windowStart = position;
+            this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(MAX_WINDOW, this.size - position));
+        }
+    }
+}
@@ -4,40 +4,219 @@ import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.exceptions.CsvValidationException;
 import tamk.tehtava.*;
-import tamk.tehtava.datamodel.AnnualEvent;
 import tamk.tehtava.datamodel.Category;
 import tamk.tehtava.datamodel.Event;
-import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.util.PipelinedGzipInputStream;
 
+import java.io.BufferedReader;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.IOException;
-import java.time.Month;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.MonthDay;
 import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import java.util.zip.CRC32C;
 
 /**
- * Provides events stored in a CSV file. Uses the OpenCSV library.
+ * Provides events stored in a CSV file. Uses the OpenCSV library,
+ * or a memory-mapped reader when the file is loaded in mapped mode.
+ * In streaming mode nothing is kept in memory, and every query reads
+ * the file again, keeping only the matching events.
+ * The provider can also follow the file as lines are appended to it,
+ * see refresh() and startWatching().
+ * A file whose name ends with ".gz" is read as a gzip-compressed CSV file.
+ * It is decompressed on a separate thread while the events are parsed,
+ * and always read sequentially, whatever the load mode.
  */
 public class CSVEventProvider implements EventProvider {
-    private final List<Event> events;
+    /**
+     * The ways of loading the CSV file.
+     */
+    public enum LoadMode {
+        /** Read the file with OpenCSV. */
+        OPENCSV,
+        /** Memory-map the file and scan the bytes directly. */
+        MAPPED,
+        /** Memory-map the file and parse chunks of it in parallel. */
+        PARALLEL,
+        /** Don't load the file, but stream it again for every query. */
+        STREAMING,
+        /**
+         * Load the events from a binary cache next to the file if it is
+         * up to date, otherwise load the file in parallel and write the cache.
+         */
+        CACHED
+    }
+
+    /*
+       How refresh() brought the events up to date, so that a provider
+       merging the events of several files knows what to merge.
+    */
+    enum RefreshResult {
+        UNCHANGED,
+        APPENDED,
+        RELOADED
+    }
+
     private final String identifier;
+    private final String fileName;
+    private final LoadMode mode;
+    private final int threads;
+    private final boolean compressed;
+    private final boolean indexed;
 
+    // Replaced on a full reload, guarded by this provider's lock.
+    // Without indexing, the index is only built when it is first queried.
+    private List<Event> events;
+    private EventIndex index;
+
+    // Size, modification time, identity and checksum of the file when it
+    // was loaded, used for telling appended lines from other changes.
+    // The checksum is only computed once refreshing needs it, see ensureChecksum().
+    private long loadedSize;
+    private FileTime loadedModified;
+    private Object loadedFileKey;
+    private long loadedChecksum;
+    private boolean checksumKnown;
+
+    private WatchService watcher;
+
+    /**
+     * Constructs a provider that reads the file with OpenCSV.
+     *
+     * @param fileName the name of the CSV file
+     * @param identifier the identifier of the provider
+     */
     public CSVEventProvider(String fileName, String identifier) {
+        this(fileName, identifier, LoadMode.OPENCSV);
+    }
+
+    /**
+     * Constructs a provider that reads the file in the specified mode.
+     *
+     * @param fileName the name of the CSV file
+     * @param identifier the identifier of the provider
+     * @param mode how to load the file
+     */
+    public CSVEventProvider(String fileName, String identifier, LoadMode mode) {
+        this(fileName, identifier, mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a provider that reads the file in the specified mode,
+     * using the given number of threads in parallel mode.
+     *
+     * @param fileName the name of the CSV file
+     * @param identifier the identifier of the provider
+     * @param mode how to load the file
+     * @param threads the number of threads used for parsing in parallel mode
+     */
+    public CSVEventProvider(String fileName, String identifier, LoadMode mode, int threads) {
+        this(fileName, identifier, mode, threads, true);
+    }
+
+    /*
+       Constructs a provider that only indexes its events if it is queried,
+       for when another provider, like CSVDirectoryEventProvider, indexes them.
+    */
+    CSVEventProvider(String fileName, String identifier, LoadMode mode, int threads, boolean indexed) {
         this.identifier = identifier;
+        this.fileName = fileName;
+        this.mode = mode;
+        this.threads = threads;
+        this.compressed = fileName.endsWith(".gz");
+        this.indexed = indexed;
+
+        this.load();
+    }
+
+    /*
+       Loads the whole file in the mode of this provider.
+    */
+    private void load() {
         this.events = new ArrayList<>();
+        this.index = null;
+        if (this.mode == LoadMode.STREAMING) {
+            return;
+        }
 
+        Path path = Path.of(this.fileName);
+        this.checksumKnown = false;
         try {
-            CSVReader reader = new CSVReaderBuilder(new FileReader(fileName)).build();
-            String[] line;
-            while ((line = reader.readNext()) != null) {
-                Event event = EventFactory.makeEvent(line[0], line[1], line[2]);
-                this.events.add(event);
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            this.loadedSize = attributes.size();
+            this.loadedModified = attributes.lastModifiedTime();
+            this.loadedFileKey = attributes.fileKey();
+        } catch (IOException ioe) {
+            // Loading the file below reports the problem.
+            this.loadedSize = 0;
+            this.loadedModified = null;
+            this.loadedFileKey = null;
+        }
+
+        CSVEventCache cache = new CSVEventCache(path);
+        CSVEventCache.Stamp stamp = null;
+        if (this.mode == LoadMode.CACHED && this.loadedModified != null) {
+            CSVEventCache.Contents contents = null;
+            try {
+                stamp = cache.stamp(this.loadedSize, this.loadedModified.toMillis());
+                this.loadedChecksum = stamp.checksum();
+                this.checksumKnown = true;
+                contents = cache.load(stamp);
+            } catch (NoSuchFileException nsfe) {
+                // Loading the file below reports it missing.
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Ignoring unreadable CSV cache '" + cache.getCachePath() + "': " + e);
+            }
+            if (contents != null) {
+                this.events = contents.events();
+                this.index = this.indexed ? contents.index() : null;
+                return;
             }
-        } catch (FileNotFoundException fnfe) {
-            System.err.println("CSV file '" + fileName + "' not found! " + fnfe.getLocalizedMessage());
+        }
+
+        // Read only as far as the size taken above, so that lines appended
+        // meanwhile are left for refresh() rather than read twice.
+        long limit = this.loadedModified != null ? this.loadedSize : Long.MAX_VALUE;
+        boolean loaded = false;
+        try {
+            if (this.compressed) {
+                // A compressed file can't be mapped, so it is read sequentially in every mode.
+                this.loadCompressed(path, limit);
+            } else {
+                switch (this.mode) {
+                    case MAPPED -> this.loadMapped(path, limit);
+                    case PARALLEL, CACHED -> new ParallelCSVLoader(this.threads).load(path, limit, this.events::add);
+                    default -> this.loadOpenCSV(path, limit);
+                }
+            }
+            loaded = true;
+        } catch (FileNotFoundException | NoSuchFileException nsfe) {
+            System.err.println("CSV file '" + this.fileName + "' not found! " + nsfe.getLocalizedMessage());
         } catch (CsvValidationException cve) {
             System.err.println("Error in CSV file contents: " + cve.getLocalizedMessage());
         } catch (DateTimeParseException dtpe) {
@@ -45,6 +224,387 @@ public class CSVEventProvider implements EventProvider {
         } catch (IOException ioe) {
             System.err.println("Error reading CSV file: " + ioe.getLocalizedMessage());
         }
+
+        this.index = this.indexed ? new EventIndex(this.events) : null;
+
+        // Only a complete load is cached, so that errors are reported again next time.
+        if (this.mode == LoadMode.CACHED && loaded && stamp != null) {
+            try {
+                cache.store(stamp, this.events, this.index != null ? this.index : new EventIndex(this.events));
+            } catch (IOException ioe) {
+                System.err.println("Unable to write CSV cache '" + cache.getCachePath() + "': "
+                        + ioe.getLocalizedMessage());
+            }
+        }
+    }
+
+    /**
+     * Brings the events up to date with the file. If lines have only been
+     * appended to the file since it was loaded, only the new complete lines
+     * are parsed and added to the events and indexes. If the file has been
+     * truncated, replaced or rewritten, it is loaded again from scratch.
+     * A rewrite is told from an append by the file key of the file and
+     * a checksum of the part of it that was loaded, which is read again.
+     * The checksum is taken by the first refresh or by startWatching(), so a
+     * file that has changed before either of them is loaded again from scratch.
+     * A compressed file is always loaded again from scratch if it has changed.
+     * Does nothing in streaming mode, which always reads the current file.
+     *
+     * @return true if the events changed, false otherwise
+     */
+    public boolean refresh() {
+        return this.refresh(event -> { }) != RefreshResult.UNCHANGED;
+    }
+
+    /*
+       Refreshes the events like refresh(), passing the events of appended lines
+       to the sink. After a full reload, the sink gets nothing.
+    */
+    synchronized RefreshResult refresh(Consumer<Event> sink) {
+        if (this.mode == LoadMode.STREAMING) {
+            return RefreshResult.UNCHANGED;
+        }
+
+        Path path = Path.of(this.fileName);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            long size = attributes.size();
+            FileTime modified = attributes.lastModifiedTime();
+            if (size == this.loadedSize && modified.equals(this.loadedModified)) {
+                this.ensureChecksum(path);
+                return RefreshResult.UNCHANGED;
+            }
+            // Without the checksum of the loaded file, an append can't be told from a rewrite.
+            if (this.compressed || !this.checksumKnown || size <= this.loadedSize
+                    || !Objects.equals(attributes.fileKey(), this.loadedFileKey)
+                    || !this.endsWithNewline(path)) {
+                this.reload(path);  // truncated, replaced, or the last line was continued
+                return RefreshResult.RELOADED;
+            }
+
+            // A rewritten file may also be longer, with a newline where the old one ended.
+            CRC32C checksum = new CRC32C();
+            CSVEventCache.updateChecksum(checksum, path, 0, this.loadedSize);
+            if (checksum.getValue() != this.loadedChecksum) {
+                this.reload(path);
+                return RefreshResult.RELOADED;
+            }
+
+            try (MappedCSVReader reader = new MappedCSVReader(path)) {
+                // Leave an incomplete last line for the next refresh.
+                long end = reader.lastRecordEnd(this.loadedSize, size);
+                if (end == this.loadedSize) {
+                    return RefreshResult.UNCHANGED;
+                }
+                List<Event> appended = new ArrayList<>();
+                try {
+                    reader.read(this.loadedSize, end, appended::add);
+                } catch (MappedCSVReader.UnsupportedRecordException ure) {
+                    this.reload(path);  // the new lines need OpenCSV, which reads the whole file
+                    return RefreshResult.RELOADED;
+                }
+                for (Event event : appended) {
+                    this.events.add(event);
+                    if (this.index != null) {
+                        this.index.add(event);
+                    }
+                    sink.accept(event);
+                }
+                CSVEventCache.updateChecksum(checksum, path, this.loadedSize, end);
+                this.loadedSize = end;
+                this.loadedModified = modified;
+                this.loadedChecksum = checksum.getValue();
+                return appended.isEmpty() ? RefreshResult.UNCHANGED : RefreshResult.APPENDED;
+            }
+        } catch (NoSuchFileException nsfe) {
+            System.err.println("CSV file '" + this.fileName + "' not found! " + nsfe.getLocalizedMessage());
+        } catch (CsvValidationException cve) {
+            System.err.println("Error in CSV file contents: " + cve.getLocalizedMessage());
+        } catch (IOException ioe) {
+            System.err.println("Error reading CSV file: " + ioe.getLocalizedMessage());
+        } catch (IllegalArgumentException iae) {
+            System.err.println("Error in appended CSV lines: " + iae.getLocalizedMessage());
+        }
+        return RefreshResult.UNCHANGED;
+    }
+
+    // Tests if the file, as it was when loaded, ended with a complete line.
+    private boolean endsWithNewline(Path path) throws IOException {
+        if (this.loadedSize == 0) {
+            return true;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, this.loadedSize - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    // Loads the whole file again, with the checksum that the next refresh needs.
+    private void reload(Path path) throws IOException {
+        this.load();
+        this.ensureChecksum(path);
+    }
+
+    /*
+       Computes the checksum of the loaded part of the file, unless it is known.
+       Loading doesn't compute it, as that would read the whole file a second time
+       for providers that are never refreshed. It is computed when refreshing
+       starts, while the file is still as it was loaded.
+    */
+    private void ensureChecksum(Path path) throws IOException {
+        if (!this.checksumKnown && !this.compressed && this.loadedModified != null) {
+            this.loadedChecksum = CSVEventCache.checksum(path, this.loadedSize);
+            this.checksumKnown = true;
+        }
+    }
+
+    /**
+     * Starts watching the file for changes on a background thread,
+     * refreshing the events whenever the file changes.
+     * Useful for long-lived processes that want to see the events
+     * added to the file by other processes.
+     *
+     * @throws IOException if the watch service can't be started
+     */
+    public synchronized void startWatching() throws IOException {
+        if (this.watcher != null) {
+            return;
+        }
+        Path path = Path.of(this.fileName).toAbsolutePath();
+        if (this.mode != LoadMode.STREAMING) {
+            this.ensureChecksum(path);
+        }
+        WatchService service = path.getFileSystem().newWatchService();
+        path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        this.watcher = service;
+
+        Thread thread = new Thread(() -> this.watch(service, path.getFileName()),
+                "csv-watcher-" + this.identifier);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops watching the file for changes.
+     */
+    public synchronized void stopWatching() {
+        if (this.watcher == null) {
+            return;
+        }
+        try {
+            this.watcher.close();
+        } catch (IOException ioe) {
+            System.err.println("Error closing CSV file watcher: " + ioe.getLocalizedMessage());
+        }
+        this.watcher = null;
+    }
+
+    private void watch(WatchService service, Path name) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            boolean changed = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                // An overflow means that events were lost, so refresh anyway.
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW || name.equals(event.context())) {
+                    changed = true;
+                }
+            }
+            if (changed) {
+                this.refresh();
+            }
+            if (!key.reset()) {
+                return;
+            }
+        }
+    }
+
+    private void loadOpenCSV(Path path, long limit) throws IOException, CsvValidationException {
+        try (CSVReader reader = new CSVReaderBuilder(
+                new InputStreamReader(limited(Files.newInputStream(path), limit))).build()) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                Event event = makeEvent(line);
+                this.events.add(event);
+            }
+        }
+    }
+
+    /*
+       Makes an event of a record read with OpenCSV. A record with too few fields
+       is malformed, as with MappedCSVReader, and extra fields are ignored.
+    */
+    static Event makeEvent(String[] line) throws CsvValidationException {
+        if (line.length < 3) {
+            throw new CsvValidationException("Expected 3 fields but found " + line.length + ": "
+                    + String.join(",", line));
+        }
+        return EventFactory.makeEvent(line[0], line[1], line[2]);
+    }
+
+    // Wraps the stream so that it ends after the given number of bytes.
+    static InputStream limited(InputStream in, long limit) {
+        return new FilterInputStream(in) {
+            private long remaining = limit;
+
+            @Override
+            public int read() throws IOException {
+                if (this.remaining <= 0) {
+                    return -1;
+                }
+                int b = super.read();
+                if (b >= 0) {
+                    this.remaining--;
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                if (this.remaining <= 0) {
+                    return -1;
+                }
+                int count = super.read(buffer, offset, (int) Math.min(length, this.remaining));
+                if (count > 0) {
+                    this.remaining -= count;
+                }
+                return count;
+            }
+        };
+    }
+
+    private void loadCompressed(Path path, long limit) throws IOException, CsvValidationException {
+        try (CSVReader reader = this.openCompressed(path, limit)) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                this.events.add(makeEvent(line));
+            }
+        }
+    }
+
+    // Opens the compressed file for OpenCSV, decompressing it on another thread.
+    private CSVReader openCompressed(Path path, long limit) throws IOException {
+        InputStream in = new PipelinedGzipInputStream(
+                limited(Files.newInputStream(path), limit), "csv-gunzip-" + this.identifier);
+        return new CSVReaderBuilder(new BufferedReader(new InputStreamReader(in), 1 << 16)).build();
+    }
+
+    /*
+       Opens a lazy stream of the events of the file, for streaming mode.
+       Like the cursor of SQLiteEventProvider, an error is reported and
+       ends the stream, so that callers get the events before it.
+       Closing the stream closes the file.
+    */
+    private Stream<Event> openStream() {
+        Stream<Event> events;
+        try {
+            events = this.openFileStream();
+        } catch (IOException ioe) {
+            this.reportStreamingError(ioe);
+            return Stream.empty();
+        }
+
+        Spliterator<Event> source = events.spliterator();
+        Spliterator<Event> reporting = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            private boolean failed;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Event> action) {
+                if (this.failed) {
+                    return false;
+                }
+                Event[] next = new Event[1];
+                try {
+                    if (!source.tryAdvance(event -> next[0] = event)) {
+                        return false;
+                    }
+                } catch (UncheckedIOException uioe) {
+                    this.failed = true;
+                    CSVEventProvider.this.reportStreamingError(uioe.getCause());
+                    return false;
+                }
+                action.accept(next[0]);
+                return true;
+            }
+        };
+        return StreamSupport.stream(reporting, false).onClose(events::close);
+    }
+
+    // Reports an error of reading the file in streaming mode, like load() does.
+    private void reportStreamingError(IOException ioe) {
+        if (ioe instanceof NoSuchFileException) {
+            System.err.println("CSV file '" + this.fileName + "' not found! " + ioe.getLocalizedMessage());
+        } else if (ioe.getCause() instanceof CsvValidationException cve) {
+            System.err.println("Error in CSV file contents: " + cve.getLocalizedMessage());
+        } else {
+            System.err.println("Error reading CSV file: " + ioe.getLocalizedMessage());
+        }
+    }
+
+    /*
+       Opens the file as a lazy stream of its events. Like MappedCSVReader.stream(),
+       errors are thrown as UncheckedIOException, with a CsvValidationException
+       wrapped in an IOException.
+    */
+    private Stream<Event> openFileStream() throws IOException {
+        Path path = Path.of(this.fileName);
+        if (!this.compressed) {
+            return new MappedCSVReader(path).stream();
+        }
+
+        CSVReader reader = this.openCompressed(path, Long.MAX_VALUE);
+        Spliterator<Event> events = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE, Spliterator.ORDERED) {
+            @Override
+            public boolean tryAdvance(Consumer<? super Event> action) {
+                Event event;
+                try {
+                    String[] line = reader.readNext();
+                    if (line == null) {
+                        return false;
+                    }
+                    event = makeEvent(line);
+                } catch (IOException ioe) {
+                    throw new UncheckedIOException(ioe);
+                } catch (CsvValidationException cve) {
+                    throw new UncheckedIOException(new IOException(cve));
+                }
+                action.accept(event);
+                return true;
+            }
+        };
+        return StreamSupport.stream(events, false).onClose(() -> {
+            try {
+                reader.close();
+            } catch (IOException ioe) {
+                throw new UncheckedIOException(ioe);
+            }
+        });
+    }
+
+    private void loadMapped(Path path, long limit) throws IOException, CsvValidationException {
+        try (MappedCSVReader reader = new MappedCSVReader(path, limit)) {
+            reader.read(this.events::add);
+        }
+    }
+
+    /*
+       Reads the file in streaming mode, keeping only the events
+       accepted by the predicate. Errors are reported like when
+       loading the file, and the events read before them are kept.
+    */
+    private List<Event> readMatching(Predicate<Event> predicate) {
+        List<Event> result = new ArrayList<>();
+        try (Stream<Event> stream = this.openStream()) {
+            stream.filter(predicate).forEach(result::add);
+        }
+        return result;
     }
 
     //
@@ -53,63 +613,94 @@ public class CSVEventProvider implements EventProvider {
 
     /**
      * Gets all events from this provider.
+     * In streaming mode this reads the whole file into memory,
+     * prefer streamEvents() there.
      *
      * @return list of all events
      */
     @Override
-    public List<Event> getEvents() {
-        return this.events;
+    public synchronized List<Event> getEvents() {
+        if (this.mode == LoadMode.STREAMING) {
+            return this.readMatching(event -> true);
+        }
+        // While watching, the list may change under the caller.
+        return this.watcher != null ? new ArrayList<>(this.events) : this.events;
+    }
+
+    /**
+     * Gets a stream of all events from this provider. In streaming mode
+     * the file is read lazily as the stream is consumed, and the stream
+     * must be closed to close the file. An error while reading is reported,
+     * and the stream ends.
+     *
+     * @return stream of all events
+     */
+    @Override
+    public synchronized Stream<Event> streamEvents() {
+        if (this.mode == LoadMode.STREAMING) {
+            return this.openStream();
+        }
+        return this.watcher != null ? new ArrayList<>(this.events).stream() : this.events.stream();
     }
 
     /**
      * Gets all events matching the specified category.
+     * A wildcard category like "apple/*" matches all of its secondary categories.
      *
      * @param category the category to match
      * @return list of matching events
      */
     @Override
-    public List<Event> getEventsOfCategory(Category category) {
-        List<Event> result = new ArrayList<Event>();
-        for (Event event : this.events) {
-            if (event.getCategory().equals(category)) {
-                result.add(event);
-            }
+    public synchronized List<Event> getEventsOfCategory(Category category) {
+        if (this.mode == LoadMode.STREAMING) {
+            return this.readMatching(event -> category.matches(event.getCategory()));
         }
-        return result;
+        return new ArrayList<>(this.index().getEventsOfCategory(category));
     }
 
     /**
      * Gets the events matching the given month-day combination.
+     * The events are looked up from the day index, and are in the
+     * order given by EventIndex.DAY_ORDER.
      *
      * @param monthDay month and day to match
      * @return list of matching events
      */
     @Override
-    public List<Event> getEventsOfDate(MonthDay monthDay) {
-        List<Event> result = new ArrayList<Event>();
-
-        for (Event event : this.events) {
-            Month eventMonth;
-            int eventDay;
-            if (event instanceof SingularEvent) {
-                SingularEvent s = (SingularEvent) event;
-                eventMonth = s.getDate().getMonth();
-                eventDay = s.getDate().getDayOfMonth();
-            } else if (event instanceof AnnualEvent) {
-                AnnualEvent a = (AnnualEvent) event;
-                eventMonth = a.getMonthDay().getMonth();
-                eventDay = a.getMonthDay().getDayOfMonth();
-            } else {
-                throw new UnsupportedOperationException(
-                        "Operation not supported for " +
-                        event.getClass().getName());
-            }
-            if (monthDay.getMonth() == eventMonth && monthDay.getDayOfMonth() == eventDay) {
-                result.add(event);
-            }
+    public synchronized List<Event> getEventsOfDate(MonthDay monthDay) {
+        if (this.mode == LoadMode.STREAMING) {
+            List<Event> result = this.readMatching(event -> monthDay.equals(event.getMonthDay()));
+            result.sort(EventIndex.DAY_ORDER);
+            return result;
         }
+        return new ArrayList<>(this.index().getEventsOfDate(monthDay));
+    }
 
-        return result;
+    /**
+     * Gets the events matching both the month-day and the category,
+     * using the day and category indexes together.
+     *
+     * @param monthDay month and day to match
+     * @param category the category to match
+     * @return list of matching events
+     */
+    @Override
+    public synchronized List<Event> getEventsOfDateAndCategory(MonthDay monthDay, Category category) {
+        if (this.mode == LoadMode.STREAMING) {
+            List<Event> result = this.readMatching(event -> monthDay.equals(event.getMonthDay())
+                    && category.matches(event.getCategory()));
+            result.sort(EventIndex.DAY_ORDER);
+            return result;
+        }
+        return this.index().getEventsOfDateAndCategory(monthDay, category);
+    }
+
+    // Gets the index, building it first for a provider that doesn't index when loading.
+    private EventIndex index() {
+        if (this.index == null) {
+            this.index = new EventIndex(this.events);
+        }
+        return this.index;
     }
 
     /**
@@ -0,0 +1,194 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.AnnualEvent;
+import tamk.tehtava.datamodel.AnnualEventComparator;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.datamodel.SingularEventComparator;
+import tamk.tehtava.util.MonthDayOrdinal;
+
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of events by their month-day and category, for answering
+ * queries without scanning all events. There is one bucket for each
+ * day of the year, including the leap day. In each bucket the annual
+ * events come first, ordered by description, and then the singular
+ * events, ordered by year. That is the order they are listed in.
+ * The events of each category, and of each primary category, are
+ * kept in the order they were added.
+ */
+public class EventIndex {
+    /**
+     * The order of events within a day: annual events by description,
+     * then singular events by year.
+     */
+    public static final Comparator<Event> DAY_ORDER = EventIndex::compareWithinDay;
+
+    private static final AnnualEventComparator ANNUAL_ORDER = new AnnualEventComparator();
+    private static final SingularEventComparator SINGULAR_ORDER = new SingularEventComparator();
+
+    private final List<List<Event>> days;
+    private final Map<Category, List<Event>> categories;
+    private final Map<String, List<Event>> primaryCategories;
+
+    /**
+     * Constructs an empty index.
+     */
+    public EventIndex() {
+        this.days = new ArrayList<>(MonthDayOrdinal.COUNT);
+        for (int i = 0; i < MonthDayOrdinal.COUNT; i++) {
+            this.days.add(new ArrayList<>());
+        }
+        this.categories = new HashMap<>();
+        this.primaryCategories = new HashMap<>();
+    }
+
+    /**
+     * Constructs an index of the specified events.
+     *
+     * @param events the events to index
+     */
+    public EventIndex(Collection<Event> events) {
+        this();
+        for (Event event : events) {
+            this.days.get(MonthDayOrdinal.of(event.getMonthDay())).add(event);
+            this.addToCategories(event);
+        }
+        // The sort is stable, so equal events stay in file order.
+        for (List<Event> day : this.days) {
+            day.sort(DAY_ORDER);
+        }
+    }
+
+    /**
+     * Constructs an index of events whose days and categories are already
+     * known, such as when restoring an index from CSVEventCache.
+     *
+     * @param events the events in the order they were added
+     * @param days the events of each day ordinal, in day order
+     * @param categories the events of each category, in the order they were added
+     */
+    EventIndex(List<Event> events, List<List<Event>> days, Map<Category, List<Event>> categories) {
+        this.days = days;
+        this.categories = categories;
+        this.primaryCategories = new HashMap<>();
+        for (Event event : events) {
+            this.primaryCategories.computeIfAbsent(event.getCategory().getPrimary(),
+                    p -> new ArrayList<>()).add(event);
+        }
+    }
+
+    /**
+     * Adds an event to the index, keeping its day in order.
+     *
+     * @param event the event to add
+     */
+    public void add(Event event) {
+        List<Event> day = this.days.get(MonthDayOrdinal.of(event.getMonthDay()));
+        // Insert after any equal events, like the stable sort would.
+        int low = 0;
+        int high = day.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (DAY_ORDER.compare(day.get(middle), event) <= 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        day.add(low, event);
+
+        this.addToCategories(event);
+    }
+
+    private void addToCategories(Event event) {
+        Category category = event.getCategory();
+        this.categories.computeIfAbsent(category, c -> new ArrayList<>()).add(event);
+        this.primaryCategories.computeIfAbsent(category.getPrimary(), p -> new ArrayList<>()).add(event);
+    }
+
+    /**
+     * Gets the events of the specified month-day, in day order.
+     *
+     * @param monthDay the month-day
+     * @return unmodifiable view of the events of the day
+     */
+    public List<Event> getEventsOfDate(MonthDay monthDay) {
+        return Collections.unmodifiableList(this.days.get(MonthDayOrdinal.of(monthDay)));
+    }
+
+    /**
+     * Gets the events of the specified category. A wildcard category
+     * gets the events of all categories with the same primary.
+     *
+     * @param category the category
+     * @return unmodifiable view of the events of the category
+     */
+    public List<Event> getEventsOfCategory(Category category) {
+        List<Event> events = category.isWildcard()
+                ? this.primaryCategories.get(category.getPrimary())
+                : this.categories.get(category);
+        return events == null ? List.of() : Collections.unmodifiableList(events);
+    }
+
+    /**
+     * Gets the events of the specified month-day and category, in day order.
+     * Goes through whichever of the day and the category has fewer events.
+     *
+     * @param monthDay the month-day
+     * @param category the category, possibly a wildcard
+     * @return list of matching events
+     */
+    public List<Event> getEventsOfDateAndCategory(MonthDay monthDay, Category category) {
+        List<Event> day = this.days.get(MonthDayOrdinal.of(monthDay));
+        List<Event> ofCategory = this.getEventsOfCategory(category);
+
+        List<Event> result = new ArrayList<>();
+        if (day.size() <= ofCategory.size()) {
+            for (Event event : day) {
+                if (category.matches(event.getCategory())) {
+                    result.add(event);
+                }
+            }
+        } else {
+            for (Event event : ofCategory) {
+                if (monthDay.equals(event.getMonthDay())) {
+                    result.add(event);
+                }
+            }
+            result.sort(DAY_ORDER);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the events of each category, not including wildcards.
+     *
+     * @return unmodifiable view of the category index
+     */
+    Map<Category, List<Event>> getCategories() {
+        return Collections.unmodifiableMap(this.categories);
+    }
+
+    private static int compareWithinDay(Event a, Event b) {
+        if (a instanceof SingularEvent sa) {
+            return b instanceof SingularEvent sb ? SINGULAR_ORDER.compare(sa, sb) : 1;
+        }
+        if (b instanceof SingularEvent) {
+            return -1;
+        }
+        if (a instanceof AnnualEvent aa && b instanceof AnnualEvent ab) {
+            return ANNUAL_ORDER.compare(aa, ab);
+        }
+        return 0;
+    }
+}
@@ -2,13 +2,116 @@ package tamk.tehtava.providers;
 
 import tamk.tehtava.datamodel.Category;
 import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.filters.CategoryFilter;
+import tamk.tehtava.filters.DateCategoryFilter;
+import tamk.tehtava.filters.DateFilter;
+import tamk.tehtava.filters.EventFilter;
 
 import java.util.List;
 import java.time.MonthDay;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 public interface EventProvider {
     List<Event> getEvents();
+
+    /**
+     * Gets a stream of all events. Providers that can produce the events
+     * lazily should override this, so that filtering them doesn't need to
+     * hold all of them in memory. The stream should be closed after use.
+     *
+     * @return stream of all events
+     */
+    default Stream<Event> streamEvents() {
+        return this.getEvents().stream();
+    }
+
     List<Event> getEventsOfCategory(Category category);
     List<Event> getEventsOfDate(MonthDay monthDay);
+
+    /**
+     * Gets the events matching both the month-day and the category.
+     * Providers that can look these up directly should override this.
+     *
+     * @param monthDay month and day to match
+     * @param category the category to match, possibly a wildcard
+     * @return list of matching events
+     */
+    default List<Event> getEventsOfDateAndCategory(MonthDay monthDay, Category category) {
+        return this.getEventsOfDate(monthDay).stream()
+                .filter(event -> category.matches(event.getCategory()))
+                .toList();
+    }
+
+    /**
+     * Gets the events accepted by the filter. Date and category filters,
+     * including combined ones, are turned into the lookups of the provider,
+     * so that providers that override them, such as SQLiteEventProvider,
+     * only read the matching events. Other filters are applied to the
+     * events as they are streamed from the provider.
+     *
+     * @param filter the filter
+     * @return list of matching events
+     */
+    default List<Event> getEvents(EventFilter filter) {
+        if (filter instanceof DateCategoryFilter dateCategoryFilter) {
+            return this.getEventsOfDateAndCategory(dateCategoryFilter.getMonthDay(), dateCategoryFilter.getCategory());
+        }
+        if (filter instanceof DateFilter dateFilter) {
+            return this.getEventsOfDate(dateFilter.getMonthDay());
+        }
+        if (filter instanceof CategoryFilter categoryFilter) {
+            return this.getEventsOfCategory(categoryFilter.getCategory());
+        }
+        try (Stream<Event> events = this.streamEvents()) {
+            return events.filter(filter::accepts).toList();
+        }
+    }
+
+    /**
+     * Gets the events of the month-day without blocking the caller on a
+     * remote server. Providers that fetch their events over the network
+     * should override this to start the fetch and return at once. The
+     * default looks the events up on the calling thread, which is as fast
+     * for local providers, and returns a completed future.
+     *
+     * @param monthDay month and day to match
+     * @return future completed with the list of matching events
+     */
+    default CompletableFuture<List<Event>> getEventsOfDateAsync(MonthDay monthDay) {
+        try {
+            return CompletableFuture.completedFuture(this.getEventsOfDate(monthDay));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Gets the events accepted by the filter without blocking the caller on
+     * a remote server. The default looks the events up with getEvents(filter)
+     * on the calling thread and returns a completed future.
+     *
+     * @param filter the filter
+     * @return future completed with the list of matching events
+     */
+    default CompletableFuture<List<Event>> getEventsAsync(EventFilter filter) {
+        try {
+            return CompletableFuture.completedFuture(this.getEvents(filter));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Tests if the provider fetches its events from a remote server, so that
+     * callers can start its lookups before those of the local providers and
+     * wait for the network while the local ones are done.
+     *
+     * @return true if the lookups of the provider wait for the network
+     */
+    default boolean isRemote() {
+        return false;
+    }
+
     String getIdentifier();
 }
\ No newline at end of file
@@ -0,0 +1,693 @@
+package tamk.tehtava.providers;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.AnnualEvent;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+import tamk.tehtava.util.MonthDayOrdinal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads events from a CSV file by memory-mapping it and scanning
+ * the bytes for delimiters and quotes directly.
+ * Only the description field is decoded into a string; dates are
+ * parsed from the digits and categories are looked up from a cache.
+ * Records that don't fit the fast path are handed to EventFactory,
+ * so the error behaviour is the same as with the OpenCSV reader.
+ * Reading is not thread-safe, use one reader per thread.
+ *
+ * The reader handles a narrower dialect than OpenCSV's defaults: a field is
+ * either unquoted, or quoted from its first byte, with quotes inside it
+ * doubled and the closing quote followed by a separator or the end of the
+ * line. Lines end with LF or CRLF. OpenCSV also takes a backslash as an
+ * escape character, a quote in the middle of a field as the start or end
+ * of quoting, and a lone CR as the end of a line. A record with any of
+ * these is outside the dialect, and read() and stream() read the rest of
+ * the file from it with OpenCSV, so that the events are the same as with
+ * OpenCSV. Reading a range throws UnsupportedRecordException instead.
+ */
+public class MappedCSVReader implements AutoCloseable {
+    /**
+     * Thrown when a record is outside the dialect of the reader,
+     * and should be read with OpenCSV instead.
+     */
+    public static class UnsupportedRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private final long offset;
+
+        /**
+         * Constructs an exception for the record at the specified offset.
+         *
+         * @param offset offset of the record
+         */
+        public UnsupportedRecordException(long offset) {
+            super("CSV record at offset " + offset + " needs OpenCSV");
+            this.offset = offset;
+        }
+
+        /**
+         * Gets the offset of the record, which is the start of a record
+         * for OpenCSV too, as the records before it are in the dialect.
+         *
+         * @return offset of the record
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+    }
+
+    // A single mapping can't be larger than Integer.MAX_VALUE bytes,
+    // so large files are mapped one window at a time.
+    private static final long MAX_WINDOW = 1L << 30;
+
+    private static final int FIELD_COUNT = 3;
+    private static final byte SEPARATOR = ',';
+    private static final byte QUOTE = '"';
+    private static final byte NEWLINE = '\n';
+    private static final byte RETURN = '\r';
+    private static final byte BACKSLASH = '\\';
+
+    // Returned by parseRecord() for a record outside the dialect.
+    private static final int UNSUPPORTED = -2;
+
+    /** The state of scanning at the start of a field, and so at the start of a record. */
+    public static final int FIELD_START = 0;
+    private static final int UNQUOTED = 1;
+    private static final int QUOTED = 2;
+    private static final int QUOTE_IN_QUOTED = 3;  // closing quote, or the first of two
+
+    // The state after a quote, a separator or newline, and any other byte, by the state before it.
+    // These follow parseRecord(), which only takes a quote at the start of a field as quoting.
+    private static final int[][] TRANSITIONS = {
+            {QUOTED, UNQUOTED, QUOTE_IN_QUOTED, QUOTED},
+            {FIELD_START, FIELD_START, QUOTED, FIELD_START},
+            {UNQUOTED, UNQUOTED, QUOTED, UNQUOTED}
+    };
+
+    /*
+       The four states packed into a byte, two bits each, by the state
+       scanning started in, so that the bytes of a range can be scanned
+       from every state at once with one lookup per byte.
+    */
+    private static final int IDENTITY_STATES = 0b11_10_01_00;
+    private static final byte[] BYTE_KINDS = new byte[256];
+    private static final int[] PACKED_TRANSITIONS = new int[TRANSITIONS.length << 8];
+
+    static {
+        Arrays.fill(BYTE_KINDS, (byte) 2);
+        BYTE_KINDS[QUOTE] = 0;
+        BYTE_KINDS[SEPARATOR] = 1;
+        BYTE_KINDS[NEWLINE] = 1;
+        for (int kind = 0; kind < TRANSITIONS.length; kind++) {
+            for (int states = 0; states < 256; states++) {
+                int next = 0;
+                for (int start = 0; start < 4; start++) {
+                    next |= TRANSITIONS[kind][(states >>> (2 * start)) & 3] << (2 * start);
+                }
+                PACKED_TRANSITIONS[(kind << 8) | states] = next;
+            }
+        }
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+
+    // Unquoted contents of the fields of the current record.
+    private byte[] scratch = new byte[256];
+    private int scratchLength;
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+    private int fieldCount;
+
+    // Categories seen so far, keyed by their raw bytes.
+    private byte[][] categoryKeys = new byte[64][];
+    private Category[] categoryValues = new Category[64];
+    private int categoryCount;
+
+    // Offset of the next record to read, and the mapped window it is in.
+    private long cursor;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private int windowLimit;
+
+    /**
+     * Opens the specified CSV file for reading.
+     *
+     * @param path path of the CSV file
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCSVReader(Path path) throws IOException {
+        this(path, Long.MAX_VALUE);
+    }
+
+    /**
+     * Opens the specified CSV file for reading only its first bytes,
+     * so that anything appended to the file later is ignored.
+     *
+     * @param path path of the CSV file
+     * @param limit the number of bytes to read at most
+     * @throws IOException if the file can't be opened
+     */
+    public MappedCSVReader(Path path, long limit) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = Math.min(limit, this.channel.size());
+    }
+
+    /**
+     * Gets the size of the file in bytes.
+     *
+     * @return the file size
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Reads all events of the file.
+     *
+     * @param sink receives the events in file order
+     * @throws IOException if reading the file fails
+     * @throws CsvValidationException if the file has a malformed record
+     */
+    public void read(Consumer<Event> sink) throws IOException, CsvValidationException {
+        try {
+            this.read(0, this.size, sink);
+        } catch (UnsupportedRecordException ure) {
+            this.readWithOpenCSV(ure.getOffset(), sink);
+        }
+    }
+
+    /**
+     * Reads the events of the records that start in the given byte range.
+     * The start offset must be at the beginning of a record.
+     *
+     * @param start offset of the first record
+     * @param end offset where no more records are started
+     * @param sink receives the events in file order
+     * @throws UnsupportedRecordException if a record is outside the dialect of the reader;
+     *         the events before it have been passed to the sink
+     * @throws IOException if reading the file fails
+     * @throws CsvValidationException if the range has a malformed record
+     */
+    public void read(long start, long end, Consumer<Event> sink) throws IOException, CsvValidationException {
+        this.seek(start);
+        Event event;
+        while ((event = this.next(end)) != null) {
+            sink.accept(event);
+        }
+    }
+
+    /**
+     * Reads the events of the records from the given offset to the end of the
+     * file with OpenCSV. The offset must be at the start of a record.
+     *
+     * @param offset offset of the first record
+     * @param sink receives the events in file order
+     * @throws IOException if reading the file fails
+     * @throws CsvValidationException if the file has a malformed record
+     */
+    public void readWithOpenCSV(long offset, Consumer<Event> sink) throws IOException, CsvValidationException {
+        try (CSVReader reader = this.openCSVReader(offset)) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                sink.accept(CSVEventProvider.makeEvent(line));
+            }
+        }
+    }
+
+    // Opens OpenCSV on the rest of the file from the given offset.
+    private CSVReader openCSVReader(long offset) throws IOException {
+        InputStream in = Files.newInputStream(this.path);
+        try {
+            in.skipNBytes(offset);
+        } catch (IOException ioe) {
+            in.close();
+            throw ioe;
+        }
+        return new CSVReaderBuilder(new BufferedReader(new InputStreamReader(
+                CSVEventProvider.limited(in, this.size - offset), StandardCharsets.UTF_8), 1 << 16)).build();
+    }
+
+    /**
+     * Gets a lazily evaluated stream of the events of the file. The records
+     * are parsed only as the stream is consumed, so only the events kept by
+     * the caller take up memory. Closing the stream closes the reader.
+     * Errors while reading are thrown as UncheckedIOException; for a malformed
+     * record its cause is an IOException caused by a CsvValidationException.
+     *
+     * @return stream of the events in file order
+     */
+    public Stream<Event> stream() {
+        this.seek(0);
+        // The records from the first one outside the dialect are read with OpenCSV.
+        CSVReader[] fallback = new CSVReader[1];
+        Iterator<Event> iterator = new Iterator<>() {
+            private Event nextEvent;
+
+            @Override
+            public boolean hasNext() {
+                if (this.nextEvent == null) {
+                    try {
+                        this.nextEvent = this.read();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    } catch (CsvValidationException cve) {
+                        throw new UncheckedIOException(new IOException(cve.getMessage(), cve));
+                    }
+                }
+                return this.nextEvent != null;
+            }
+
+            private Event read() throws IOException, CsvValidationException {
+                if (fallback[0] == null) {
+                    try {
+                        return MappedCSVReader.this.next(MappedCSVReader.this.size);
+                    } catch (UnsupportedRecordException ure) {
+                        fallback[0] = MappedCSVReader.this.openCSVReader(ure.getOffset());
+                    }
+                }
+                String[] line = fallback[0].readNext();
+                return line != null ? CSVEventProvider.makeEvent(line) : null;
+            }
+
+            @Override
+            public Event next() {
+                if (!this.hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Event event = this.nextEvent;
+                this.nextEvent = null;
+                return event;
+            }
+        };
+
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+                false).onClose(() -> {
+                    try {
+                        if (fallback[0] != null) {
+                            fallback[0].close();
+                        }
+                        this.close();
+                    } catch (IOException ioe) {
+                        throw new UncheckedIOException(ioe);
+                    }
+                });
+    }
+
+    /*
+       Moves the cursor to the given offset, which must be at the start of a record.
+    */
+    private void seek(long offset) {
+        this.cursor = offset;
+        this.window = null;
+    }
+
+    /*
+       Parses the record at the cursor and moves the cursor past it.
+       Returns null if the cursor is at or past the end offset.
+       A new window is mapped whenever the record is not inside the current one.
+    */
+    private Event next(long end) throws IOException, CsvValidationException {
+        if (this.cursor >= end || this.cursor >= this.size) {
+            return null;
+        }
+
+        if (this.window == null || this.cursor >= this.windowStart + this.windowLimit) {
+            this.map(this.cursor);
+        }
+        int next = this.parseRecord(this.window, (int) (this.cursor - this.windowStart),
+                this.windowLimit, this.isLastWindow());
+        if (next == -1 && this.windowStart != this.cursor) {
+            // The record continues past the window, map one that starts from it.
+            this.map(this.cursor);
+            next = this.parseRecord(this.window, 0, this.windowLimit, this.isLastWindow());
+        }
+        if (next == UNSUPPORTED) {
+            throw new UnsupportedRecordException(this.cursor);
+        }
+        if (next < 0) {
+            throw new CsvValidationException("CSV record at offset " + this.cursor + " is too long");
+        }
+
+        this.cursor = this.windowStart + next;
+        return this.makeEvent();
+    }
+
+    private void map(long position) throws IOException {
+        this.windowStart = position;
+        this.windowLimit = (int) Math.min(MAX_WINDOW, this.size - position);
+        this.window = this.channel.map(FileChannel.MapMode.READ_ONLY, position, this.windowLimit);
+    }
+
+    private boolean isLastWindow() {
+        return this.windowStart + this.windowLimit == this.size;
+    }
+
+    /**
+     * Scans the given byte range from each state that scanning can be in at
+     * its start. The state at the end of the range, for a state at its start,
+     * is given by stateAfter(). Ranges can be scanned separately, and their
+     * states chained in order to know the state at the start of each one.
+     * Unlike reading, this can be called from several threads at once.
+     *
+     * @param start offset of the first byte
+     * @param end offset after the last byte
+     * @return the states at the end of the range, packed into an int
+     * @throws IOException if reading the file fails
+     */
+    public int scanStates(long start, long end) throws IOException {
+        int states = IDENTITY_STATES;
+        long position = start;
+        while (position < end) {
+            long windowSize = Math.min(MAX_WINDOW, end - position);
+            MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                states = PACKED_TRANSITIONS[(BYTE_KINDS[buffer.get(i) & 0xFF] << 8) | states];
+            }
+            position += windowSize;
+        }
+        return states;
+    }
+
+    /**
+     * Gets the state at the end of a scanned range.
+     *
+     * @param states the states returned by scanStates()
+     * @param state the state at the start of the range
+     * @return the state at the end of the range
+     */
+    public static int stateAfter(int states, int state) {
+        return (states >>> (2 * state)) & 3;
+    }
+
+    /**
+     * Finds the start of the first record that begins at or after the given offset.
+     * The state of scanning at the offset must be known, so that newlines inside
+     * quoted fields are not mistaken for record ends.
+     *
+     * @param offset offset to start looking from
+     * @param state the state at the offset, FIELD_START at the start of the file
+     * @return offset of the next record, or the file size if there are none
+     * @throws IOException if reading the file fails
+     */
+    public long nextRecordStart(long offset, int state) throws IOException {
+        if (state == FIELD_START) {
+            // The previous byte tells if we are already at the start of a record.
+            if (offset == 0 || this.channel.map(FileChannel.MapMode.READ_ONLY, offset - 1, 1).get(0) == NEWLINE) {
+                return offset;
+            }
+        }
+
+        long position = offset;
+        while (position < this.size) {
+            long windowSize = Math.min(MAX_WINDOW, this.size - position);
+            MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            for (int i = 0; i < windowSize; i++) {
+                byte b = buffer.get(i);
+                if (b == NEWLINE && state != QUOTED) {
+                    return position + i + 1;
+                }
+                state = TRANSITIONS[BYTE_KINDS[b & 0xFF]][state];
+            }
+            position += windowSize;
+        }
+        return this.size;
+    }
+
+    /**
+     * Finds the end of the last complete line in the given byte range,
+     * that is, the offset just after its last newline.
+     *
+     * @param start offset of the first byte
+     * @param end offset after the last byte
+     * @return offset after the last newline, or the start if there is none
+     * @throws IOException if reading the file fails
+     */
+    public long lastRecordEnd(long start, long end) throws IOException {
+        long position = end;
+        while (position > start) {
+            long windowStart = Math.max(start, position - MAX_WINDOW);
+            MappedByteBuffer buffer = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                    windowStart, position - windowStart);
+            for (int i = (int) (position - windowStart) - 1; i >= 0; i--) {
+                if (buffer.get(i) == NEWLINE) {
+                    return windowStart + i + 1;
+                }
+            }
+            position = windowStart;
+        }
+        return start;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /*
+       Parses one record starting at the given offset into the scratch buffer.
+       Returns the offset of the next record, -1 if the record doesn't end
+       inside the buffer and more of the file needs to be mapped, or
+       UNSUPPORTED if the record is outside the dialect of the reader.
+    */
+    private int parseRecord(MappedByteBuffer buffer, int offset, int limit, boolean lastWindow)
+            throws IOException, CsvValidationException {
+        this.scratchLength = 0;
+        this.fieldCount = 0;
+        int position = offset;
+
+        while (true) {
+            int fieldStart = this.scratchLength;
+            byte b = 0;
+            boolean quoted = position < limit && buffer.get(position) == QUOTE;
+
+            if (quoted) {
+                position++;
+                while (true) {
+                    if (position >= limit) {
+                        if (!lastWindow) {
+                            return -1;
+                        }
+                        throw new IOException("Un-terminated quoted field at end of CSV file");
+                    }
+                    b = buffer.get(position);
+                    if (b == QUOTE) {
+                        if (position + 1 >= limit && !lastWindow) {
+                            return -1;
+                        }
+                        if (position + 1 < limit && buffer.get(position + 1) == QUOTE) {
+                            this.append(QUOTE);
+                            position += 2;
+                            continue;
+                        }
+                        position++;
+                        break;
+                    }
+                    if (b == BACKSLASH || b == RETURN) {
+                        return UNSUPPORTED;  // OpenCSV unescapes it, or makes a line break of it
+                    }
+                    this.append(b);
+                    position++;
+                }
+            }
+
+            // Unquoted field, or the end of the line after the closing quote.
+            boolean terminated = false;
+            while (position < limit) {
+                b = buffer.get(position);
+                if (b == SEPARATOR || b == NEWLINE) {
+                    terminated = true;
+                    break;
+                }
+                if (b == RETURN) {
+                    // A CR is only allowed before an LF, OpenCSV ends the line at a lone one.
+                    if (position + 1 >= limit && !lastWindow) {
+                        return -1;
+                    }
+                    if (position + 1 < limit && buffer.get(position + 1) != NEWLINE) {
+                        return UNSUPPORTED;
+                    }
+                } else if (quoted || b == QUOTE || b == BACKSLASH) {
+                    return UNSUPPORTED;  // OpenCSV keeps or unescapes it differently
+                }
+                this.append(b);
+                position++;
+            }
+            if (!terminated && !lastWindow) {
+                return -1;
+            }
+
+            boolean endOfRecord = !terminated || b == NEWLINE;
+            if (endOfRecord && this.scratchLength > fieldStart && this.scratch[this.scratchLength - 1] == RETURN) {
+                this.scratchLength--;
+            }
+            if (this.fieldCount < FIELD_COUNT) {
+                this.fieldStarts[this.fieldCount] = fieldStart;
+                this.fieldEnds[this.fieldCount] = this.scratchLength;
+            }
+            this.fieldCount++;
+
+            if (terminated) {
+                position++;  // skip the separator or newline
+            }
+            if (endOfRecord) {
+                break;
+            }
+        }
+
+        if (this.fieldCount < FIELD_COUNT) {
+            // Same message as for a short record read with OpenCSV.
+            String[] fields = new String[this.fieldCount];
+            for (int i = 0; i < this.fieldCount; i++) {
+                fields[i] = this.decode(this.fieldStarts[i], this.fieldEnds[i]);
+            }
+            throw new CsvValidationException("Expected " + FIELD_COUNT + " fields but found "
+                    + this.fieldCount + ": " + String.join(",", fields));
+        }
+        return position;
+    }
+
+    private void append(byte b) {
+        if (this.scratchLength == this.scratch.length) {
+            this.scratch = Arrays.copyOf(this.scratch, this.scratch.length * 2);
+        }
+        this.scratch[this.scratchLength++] = b;
+    }
+
+    private String decode(int start, int end) {
+        return new String(this.scratch, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    /*
+       Makes an event of the fields in the scratch buffer.
+       Falls back to EventFactory if the date is not in one of
+       the two formats that can be parsed from the digits directly.
+    */
+    private Event makeEvent() {
+        int dateStart = this.fieldStarts[0];
+        int dateLength = this.fieldEnds[0] - dateStart;
+
+        // EventFactory parses the category first, do the same here.
+        Category category = this.getCategory(this.fieldStarts[2], this.fieldEnds[2]);
+        String description = this.decode(this.fieldStarts[1], this.fieldEnds[1]);
+
+        try {
+            if (dateLength == 7 && this.scratch[dateStart] == '-' && this.scratch[dateStart + 1] == '-'
+                    && this.scratch[dateStart + 4] == '-') {  // --MM-dd
+                int ordinal = MonthDayOrdinal.of(this.digits(dateStart + 2, 2), this.digits(dateStart + 5, 2));
+                if (ordinal >= 0) {
+                    return new AnnualEvent(MonthDayOrdinal.toMonthDay(ordinal), description, category);
+                }
+            } else if (dateLength == 10 && this.scratch[dateStart + 4] == '-'
+                    && this.scratch[dateStart + 7] == '-') {  // yyyy-MM-dd
+                int year = this.digits(dateStart, 4);
+                int month = this.digits(dateStart + 5, 2);
+                int day = this.digits(dateStart + 8, 2);
+                if (year >= 0 && month >= 0 && day >= 0) {
+                    return new SingularEvent(LocalDate.of(year, month, day), description, category);
+                }
+            }
+        } catch (DateTimeException dte) {
+            // Let EventFactory report the invalid date.
+        }
+
+        return EventFactory.makeEvent(this.decode(dateStart, this.fieldEnds[0]), description,
+                this.decode(this.fieldStarts[2], this.fieldEnds[2]));
+    }
+
+    // Parses the given number of ASCII digits, returns -1 if there is a non-digit.
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = this.scratch[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /*
+       Looks up the category for the given bytes of the scratch buffer
+       from an open addressing hash table, parsing and adding it if needed.
+    */
+    private Category getCategory(int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + this.scratch[i];
+        }
+        int mask = this.categoryKeys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (this.categoryKeys[slot] != null) {
+            byte[] key = this.categoryKeys[slot];
+            if (Arrays.equals(key, 0, key.length, this.scratch, start, end)) {
+                return this.categoryValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        Category category = Category.parse(this.decode(start, end));
+        this.categoryKeys[slot] = Arrays.copyOfRange(this.scratch, start, end);
+        this.categoryValues[slot] = category;
+        this.categoryCount++;
+        if (this.categoryCount * 2 > this.categoryKeys.length) {
+            this.growCategories();
+        }
+        return category;
+    }
+
+    private void growCategories() {
+        byte[][] oldKeys = this.categoryKeys;
+        Category[] oldValues = this.categoryValues;
+        this.categoryKeys = new byte[oldKeys.length * 2][];
+        this.categoryValues = new Category[oldValues.length * 2];
+        int mask = this.categoryKeys.length - 1;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            byte[] key = oldKeys[i];
+            if (key == null) {
+                continue;
+            }
+            int hash = 1;
+            for (byte b : key) {
+                hash = 31 * hash + b;
+            }
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (this.categoryKeys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            this.categoryKeys[slot] = key;
+            this.categoryValues[slot] = oldValues[i];
+        }
+    }
+}
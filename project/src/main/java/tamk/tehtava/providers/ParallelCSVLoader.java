@@ -0,0 +1,188 @@
+package tamk.tehtava.providers;
+
+import com.opencsv.exceptions.CsvValidationException;
+import tamk.tehtava.datamodel.Event;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Loads the events of a CSV file in parallel. The file is split into
+ * byte ranges, each range is snapped to a record boundary, and the
+ * ranges are parsed with MappedCSVReader on a fork-join pool.
+ * The events are passed on in file order, so the result is the same
+ * as when reading the file sequentially. From the first record that is
+ * outside the dialect of MappedCSVReader, the file is read sequentially
+ * with OpenCSV.
+ */
+public class ParallelCSVLoader {
+    // Files smaller than this per thread are not worth splitting further.
+    private static final long MIN_CHUNK_SIZE = 1L << 20;
+
+    // More chunks than threads evens out the load between the threads.
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final int threads;
+    private final long minChunkSize;
+
+    /**
+     * Constructs a loader that uses all available processors.
+     */
+    public ParallelCSVLoader() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs a loader with the specified number of threads.
+     *
+     * @param threads the number of parsing threads
+     */
+    public ParallelCSVLoader(int threads) {
+        this(threads, MIN_CHUNK_SIZE);
+    }
+
+    // Smaller chunks let tests split small files.
+    ParallelCSVLoader(int threads, long minChunkSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Thread count must be positive: " + threads);
+        }
+        this.threads = threads;
+        this.minChunkSize = minChunkSize;
+    }
+
+    /**
+     * Loads all events of the specified CSV file. If a record is malformed,
+     * the events before it are still passed to the sink, like when
+     * reading the file sequentially.
+     *
+     * @param path path of the CSV file
+     * @param sink receives the events in file order
+     * @throws IOException if reading the file fails
+     * @throws CsvValidationException if the file has a malformed record
+     */
+    public void load(Path path, Consumer<Event> sink) throws IOException, CsvValidationException {
+        this.load(path, Long.MAX_VALUE, sink);
+    }
+
+    /**
+     * Loads the events of the first bytes of the specified CSV file.
+     *
+     * @param path path of the CSV file
+     * @param limit the number of bytes to read at most
+     * @param sink receives the events in file order
+     * @throws IOException if reading the file fails
+     * @throws CsvValidationException if the file has a malformed record
+     */
+    public void load(Path path, long limit, Consumer<Event> sink) throws IOException, CsvValidationException {
+        ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try (MappedCSVReader reader = new MappedCSVReader(path, limit)) {
+            long[] boundaries = this.findBoundaries(reader, pool);
+
+            List<List<Event>> chunks = new ArrayList<>();
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int i = 0; i < boundaries.length - 1; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                List<Event> chunk = new ArrayList<>();
+                chunks.add(chunk);
+                tasks.add(pool.submit(() -> {
+                    try (MappedCSVReader chunkReader = new MappedCSVReader(path, limit)) {
+                        chunkReader.read(start, end, chunk::add);
+                    }
+                    return null;
+                }));
+            }
+
+            // Joining in order also publishes each chunk's list to this thread.
+            for (int i = 0; i < tasks.size(); i++) {
+                MappedCSVReader.UnsupportedRecordException unsupported = null;
+                try {
+                    join(tasks.get(i));
+                } catch (MappedCSVReader.UnsupportedRecordException ure) {
+                    unsupported = ure;
+                } finally {
+                    chunks.get(i).forEach(sink);
+                }
+                if (unsupported != null) {
+                    // Like MappedCSVReader.read(), read the rest of the file with OpenCSV.
+                    reader.readWithOpenCSV(unsupported.getOffset(), sink);
+                    return;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /*
+       Splits the file into roughly equal ranges and moves each split point
+       forward to the start of a record. A split point may fall inside a
+       quoted field, so each range is first scanned in parallel from every
+       state the reader can be in at its start, and the states are then
+       chained from the start of the file to know the state at each point.
+    */
+    private long[] findBoundaries(MappedCSVReader reader, ForkJoinPool pool)
+            throws IOException, CsvValidationException {
+        long size = reader.size();
+        int chunks = (int) Math.max(1, Math.min(
+                (long) this.threads * CHUNKS_PER_THREAD, size / this.minChunkSize));
+
+        long[] splits = new long[chunks + 1];
+        for (int i = 0; i <= chunks; i++) {
+            splits[i] = size * i / chunks;
+        }
+
+        List<ForkJoinTask<Integer>> scans = new ArrayList<>();
+        for (int i = 0; i < chunks; i++) {
+            long start = splits[i];
+            long end = splits[i + 1];
+            scans.add(pool.submit(() -> reader.scanStates(start, end)));
+        }
+
+        long[] boundaries = new long[chunks + 1];
+        int state = MappedCSVReader.FIELD_START;
+        for (int i = 0; i < chunks; i++) {
+            boundaries[i] = reader.nextRecordStart(splits[i], state);
+            state = MappedCSVReader.stateAfter(join(scans.get(i)), state);
+        }
+        boundaries[chunks] = size;
+
+        // A long quoted field may swallow a whole chunk, keep the boundaries in order.
+        for (int i = 1; i <= chunks; i++) {
+            boundaries[i] = Math.max(boundaries[i], boundaries[i - 1]);
+        }
+        return boundaries;
+    }
+
+    // Waits for the task and rethrows whatever it failed with.
+    private static <T> T join(ForkJoinTask<T> task) throws IOException, CsvValidationException {
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading CSV file", ie);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            // The pool wraps the checked exceptions of a callable in plain RuntimeExceptions.
+            while (cause.getClass() == RuntimeException.class && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof IOException ioe) {
+                throw ioe;
+            } else if (cause instanceof CsvValidationException cve) {
+                throw cve;
+            } else if (cause instanceof RuntimeException re) {
+                throw re;
+            } else if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new IOException(cause);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package tamk.tehtava.providers;
+
+import org.sqlite.SQLiteConfig;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pool of long-lived connections to an SQLite database. Keeping the
+ * connections open keeps SQLite's parsed schema and page cache warm
+ * between queries, instead of reopening the database every time.
+ *
+ * There are up to a configurable number of read-only connections, which
+ * may be used concurrently, and one writer connection, which is used by
+ * one thread at a time, as SQLite only allows one writer anyway.
+ * Connections are leased with try-with-resources:
+ * <pre>
+ * try (var lease = pool.reader()) {
+ *     var statement = lease.prepare(...);
+ * }
+ * </pre>
+ * An idle connection is checked before it is leased again, and replaced
+ * if it is no longer usable.
+ *
+ * Each connection keeps the statements prepared with Lease.prepare(),
+ * so that a query is parsed and planned only once per connection.
+ *
+ * The connections are opened with the settings of an SQLiteProfile.
+ */
+public class SQLiteConnectionPool implements AutoCloseable {
+    /** The number of read-only connections, by default. */
+    public static final int DEFAULT_SIZE = 4;
+
+    // How long to wait for a free connection before giving up.
+    private static final long LEASE_TIMEOUT_SECONDS = 30;
+
+    // Connections idle for longer than this are validated before use.
+    private static final long VALIDATE_AFTER_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    /**
+     * A connection leased from the pool. Closing the lease
+     * returns the connection to the pool rather than closing it.
+     */
+    public class Lease implements AutoCloseable {
+        private final Pooled pooled;
+        private final boolean writer;
+        private boolean returned;
+
+        private Lease(Pooled pooled, boolean writer) {
+            this.pooled = pooled;
+            this.writer = writer;
+        }
+
+        /**
+         * Gets the leased connection.
+         *
+         * @return the connection
+         */
+        public Connection connection() {
+            return this.pooled.connection;
+        }
+
+        /**
+         * Gets a prepared statement for the SQL on the leased connection,
+         * preparing it only the first time. The statement belongs to the
+         * connection and must not be closed, but its result sets must be.
+         *
+         * @param sql the SQL of the statement
+         * @return the statement, with its parameters cleared
+         * @throws SQLException if preparing the statement fails
+         */
+        public PreparedStatement prepare(String sql) throws SQLException {
+            PreparedStatement statement = this.pooled.statements.get(sql);
+            if (statement == null || statement.isClosed()) {
+                statement = this.pooled.connection.prepareStatement(sql);
+                this.pooled.statements.put(sql, statement);
+            } else {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        /**
+         * Returns the connection to the pool. A transaction left
+         * open on the connection is rolled back first.
+         */
+        @Override
+        public void close() {
+            if (this.returned) {
+                return;
+            }
+            this.returned = true;
+            SQLiteConnectionPool.this.release(this.pooled, this.writer);
+        }
+    }
+
+    // A pooled connection, its prepared statements and the time it was last returned.
+    private static class Pooled {
+        final Connection connection;
+        final Map<String, PreparedStatement> statements;
+        long since;
+
+        Pooled(Connection connection) {
+            this.connection = connection;
+            this.statements = new HashMap<>();
+            this.since = System.nanoTime();
+        }
+    }
+
+    private final String url;
+    private final SQLiteProfile profile;
+    private final SQLiteConfig readerConfig;
+    private final SQLiteConfig writerConfig;
+
+    private final ConcurrentLinkedDeque<Pooled> idleReaders;
+    private final Semaphore readerPermits;
+    private final Semaphore writerPermit;
+    private Pooled idleWriter;
+
+    private volatile boolean closed;
+
+    // True once the writer has set up the database for the profile.
+    private volatile boolean prepared;
+
+    /**
+     * Constructs a pool with the default number of read-only connections.
+     *
+     * @param url the JDBC URL of the database
+     */
+    public SQLiteConnectionPool(String url) {
+        this(url, DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a pool with the default profile.
+     *
+     * @param url the JDBC URL of the database
+     * @param size the maximum number of read-only connections
+     */
+    public SQLiteConnectionPool(String url, int size) {
+        this(url, size, SQLiteProfile.DEFAULT);
+    }
+
+    /**
+     * Constructs a pool. No connections are opened until they are needed.
+     *
+     * @param url the JDBC URL of the database, see SQLiteProfile.url()
+     * @param size the maximum number of read-only connections
+     * @param profile the settings of the connections
+     */
+    public SQLiteConnectionPool(String url, int size, SQLiteProfile profile) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        }
+        this.url = url;
+        this.profile = profile;
+        this.readerConfig = profile.config(true);
+        this.writerConfig = profile.config(false);
+        this.prepared = !profile.setsJournalMode();
+        this.idleReaders = new ConcurrentLinkedDeque<>();
+        this.readerPermits = new Semaphore(size, true);
+        this.writerPermit = new Semaphore(1, true);
+    }
+
+    /**
+     * Leases a read-only connection, waiting if all of them are in use.
+     *
+     * @return the lease of the connection
+     * @throws SQLException if the pool is closed, no connection becomes free
+     *         in time or opening a connection fails
+     */
+    public Lease reader() throws SQLException {
+        this.prepare();
+        this.acquire(this.readerPermits);
+        try {
+            // The most recently used connection has the warmest cache.
+            Pooled idle;
+            while ((idle = this.idleReaders.pollFirst()) != null) {
+                if (this.isHealthy(idle)) {
+                    return new Lease(idle, false);
+                }
+                closeQuietly(idle.connection);
+            }
+            return new Lease(new Pooled(this.open(this.readerConfig)), false);
+        } catch (SQLException | RuntimeException e) {
+            this.readerPermits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Leases the writer connection, waiting if it is in use.
+     *
+     * @return the lease of the connection
+     * @throws SQLException if the pool is closed, the connection doesn't
+     *         become free in time or opening it fails
+     */
+    public Lease writer() throws SQLException {
+        this.acquire(this.writerPermit);
+        try {
+            Pooled idle = this.idleWriter;
+            this.idleWriter = null;
+            if (idle != null && !this.isHealthy(idle)) {
+                closeQuietly(idle.connection);
+                idle = null;
+            }
+            if (idle == null) {
+                idle = new Pooled(this.open(this.writerConfig));
+            }
+            return new Lease(idle, true);
+        } catch (SQLException | RuntimeException e) {
+            this.writerPermit.release();
+            throw e;
+        }
+    }
+
+    /*
+       Opens the writer once before the first reader, so that it sets the
+       journal mode of the profile, which read-only connections can't do.
+       If the database can't be written, the readers use it as it is.
+    */
+    private void prepare() {
+        if (this.prepared) {
+            return;
+        }
+        synchronized (this) {
+            if (!this.prepared) {
+                try {
+                    this.writer().close();
+                    this.prepared = true;
+                } catch (SQLException e) {
+                    System.err.println("Unable to apply SQLite profile " + this.profile + ": " + e.getMessage());
+                    this.prepared = true;
+                }
+            }
+        }
+    }
+
+    private void acquire(Semaphore permits) throws SQLException {
+        if (this.closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(LEASE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ie);
+        }
+    }
+
+    private Connection open(SQLiteConfig config) throws SQLException {
+        return DriverManager.getConnection(this.url, config.toProperties());
+    }
+
+    // Connections that were used recently are assumed to be fine.
+    private boolean isHealthy(Pooled idle) {
+        try {
+            if (idle.connection.isClosed()) {
+                return false;
+            }
+            return System.nanoTime() - idle.since < VALIDATE_AFTER_NANOS
+                    || idle.connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void release(Pooled idle, boolean writer) {
+        Connection connection = idle.connection;
+        boolean reusable = !this.closed;
+        try {
+            if (reusable && !connection.isClosed() && !connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            reusable = false;
+        }
+
+        idle.since = System.nanoTime();
+        if (writer) {
+            if (reusable) {
+                this.idleWriter = idle;
+            } else {
+                closeQuietly(connection);
+            }
+            this.writerPermit.release();
+        } else {
+            if (reusable) {
+                this.idleReaders.offerFirst(idle);
+            } else {
+                closeQuietly(connection);
+            }
+            this.readerPermits.release();
+        }
+
+        // The pool may have been closed while the connection was being returned.
+        if (this.closed) {
+            this.closeIdle();
+        }
+    }
+
+    /**
+     * Closes the pool and its idle connections. Leased connections
+     * are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        this.closeIdle();
+    }
+
+    private synchronized void closeIdle() {
+        Pooled idle;
+        while ((idle = this.idleReaders.pollFirst()) != null) {
+            closeQuietly(idle.connection);
+        }
+        if (this.writerPermit.tryAcquire()) {
+            if (this.idleWriter != null) {
+                closeQuietly(this.idleWriter.connection);
+                this.idleWriter = null;
+            }
+            this.writerPermit.release();
+        }
+    }
+
+    private static void closeQuietly(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            System.err.println("Error closing database connection: " + e.getMessage());
+        }
+    }
+}
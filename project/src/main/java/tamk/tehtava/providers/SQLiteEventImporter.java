@@ -0,0 +1,222 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports large numbers of events into the event table of an SQLite
+ * database, much faster than adding them with SQLiteEventProvider.
+ *
+ * The whole import is one transaction on a connection of its own, and
+ * the rows are inserted with batched INSERT statements. Once the import
+ * has grown large compared to the table, the indexes of the event table
+ * are dropped, and they are created again when the import is committed,
+ * as building an index once is much faster than updating it for every
+ * row. A small import into a large table keeps the indexes, as building
+ * them would take longer than the import itself. In the same way, the
+ * trigger that adds each new event to the full-text index event_fts is
+ * dropped, and the imported events are added to it at once on commit.
+ *
+ * Unless the import is durable, the connection has the BULK_LOAD profile:
+ * it keeps its rollback journal in memory and doesn't wait for the writes
+ * to reach the disk. That is safe as long as the process isn't killed and
+ * the system doesn't crash during the import, in which case the database
+ * may be left corrupt, so keep a backup of a database that matters.
+ *
+ * The categories of the events are resolved to the category IDs of the
+ * database. A category is given either as "primary/secondary", like in
+ * the CSV event files, or as the numeric ID, like in fake10k.csv.
+ * Events whose category isn't in the database are rejected.
+ */
+public class SQLiteEventImporter implements AutoCloseable {
+    private static final String INSERT_EVENT =
+            "INSERT INTO event (event_date, event_description, category_id) VALUES (?, ?, ?)";
+
+    private final Connection connection;
+    private final PreparedStatement insert;
+    private final Map<String, Integer> categoryIds;
+
+    // The indexes are dropped once this many rows have been imported, or never if negative.
+    private final long deferIndexesAfter;
+    // The definitions of the dropped indexes and triggers, created again on commit.
+    private final List<String> deferredIndexes;
+    private String deferredFullTextTrigger;
+    private boolean indexesDropped;
+
+    // The largest rowid when the full-text trigger was dropped, the rows after it aren't indexed.
+    private long lastIndexedRowid;
+
+    private long imported;
+    private boolean finished;
+
+    /**
+     * Begins an import into the database.
+     *
+     * @param fileName the name of the SQLite database file
+     * @param durable true to keep the database safe from crashes during the import,
+     *        at the cost of speed
+     * @param deferIndexes true to drop the indexes of the event table during a large
+     *        import, false to always update them for every row
+     * @throws SQLException if beginning the import fails
+     */
+    public SQLiteEventImporter(String fileName, boolean durable, boolean deferIndexes) throws SQLException {
+        SQLiteProfile profile = durable ? SQLiteProfile.DEFAULT : SQLiteProfile.BULK_LOAD;
+        this.connection = DriverManager.getConnection(profile.url(fileName), profile.config(false).toProperties());
+        this.deferredIndexes = new ArrayList<>();
+        try {
+            this.categoryIds = this.readCategoryIds();
+
+            // Dropping the indexes pays off once the import is about a tenth of the table,
+            // whose size is estimated from the largest rowid, which doesn't need a scan.
+            this.deferIndexesAfter = deferIndexes ? this.getLastRowid() / 10 : -1;
+
+            this.connection.setAutoCommit(false);
+            this.insert = this.connection.prepareStatement(INSERT_EVENT);
+        } catch (SQLException e) {
+            this.connection.close();
+            throw e;
+        }
+    }
+
+    // Maps both "primary/secondary" and the ID of each category to the ID.
+    private Map<String, Integer> readCategoryIds() throws SQLException {
+        Map<String, Integer> result = new HashMap<>();
+        try (var statement = this.connection.createStatement();
+             var rs = statement.executeQuery("SELECT category_id, primary_name, secondary_name FROM category")) {
+            while (rs.next()) {
+                int categoryId = rs.getInt("category_id");
+                Category category = new Category(rs.getString("primary_name"), rs.getString("secondary_name"));
+                result.putIfAbsent(category.toString(), categoryId);
+                result.put(String.valueOf(categoryId), categoryId);
+            }
+        }
+        return result;
+    }
+
+    private long getLastRowid() throws SQLException {
+        try (var statement = this.connection.createStatement();
+             var rs = statement.executeQuery("SELECT max(rowid) FROM event")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    private void dropIndexes() throws SQLException {
+        // Automatic indexes, such as those of UNIQUE constraints, have no SQL and can't be dropped.
+        List<String> names = new ArrayList<>();
+        try (var statement = this.connection.createStatement();
+             var rs = statement.executeQuery("SELECT name, sql FROM sqlite_schema"
+                     + " WHERE type = 'index' AND tbl_name = 'event' AND sql IS NOT NULL")) {
+            while (rs.next()) {
+                names.add(rs.getString("name"));
+                this.deferredIndexes.add(rs.getString("sql"));
+            }
+        }
+        try (var statement = this.connection.createStatement()) {
+            for (String name : names) {
+                statement.execute("DROP INDEX \"" + name.replace("\"", "\"\"") + "\"");
+            }
+        }
+
+        try (var statement = this.connection.createStatement();
+             var rs = statement.executeQuery("SELECT sql FROM sqlite_schema"
+                     + " WHERE type = 'trigger' AND name = 'event_fts_insert'")) {
+            if (rs.next()) {
+                this.deferredFullTextTrigger = rs.getString("sql");
+            }
+        }
+        if (this.deferredFullTextTrigger != null) {
+            this.lastIndexedRowid = this.getLastRowid();
+            try (var statement = this.connection.createStatement()) {
+                statement.execute("DROP TRIGGER event_fts_insert");
+            }
+        }
+    }
+
+    /**
+     * Inserts a batch of events. Events whose category isn't
+     * in the database are reported and skipped.
+     *
+     * @param events the events to insert
+     * @return the number of events inserted
+     * @throws SQLException if inserting fails
+     */
+    public int insert(List<Event> events) throws SQLException {
+        if (this.deferIndexesAfter >= 0 && this.imported >= this.deferIndexesAfter
+                && !this.indexesDropped) {
+            this.dropIndexes();
+            this.indexesDropped = true;
+        }
+
+        int count = 0;
+        for (Event event : events) {
+            Integer categoryId = this.categoryIds.get(event.getCategory().toString());
+            if (categoryId == null) {
+                System.err.println("Category not found in database: " + event.getCategory());
+                continue;
+            }
+            // Singular events are stored as full dates and annual events as "--MM-DD".
+            this.insert.setString(1, event instanceof SingularEvent singular
+                    ? singular.getDate().toString() : event.getMonthDay().toString());
+            this.insert.setString(2, event.getDescription());
+            this.insert.setInt(3, categoryId);
+            this.insert.addBatch();
+            count++;
+        }
+        this.insert.executeBatch();
+        this.imported += count;
+        return count;
+    }
+
+    /**
+     * Creates the dropped indexes and triggers again and commits the import.
+     *
+     * @return the number of events imported
+     * @throws SQLException if creating the indexes or committing fails
+     */
+    public long commit() throws SQLException {
+        try (var statement = this.connection.createStatement()) {
+            for (String sql : this.deferredIndexes) {
+                statement.execute(sql);
+            }
+        }
+        if (this.deferredFullTextTrigger != null) {
+            try (var index = this.connection.prepareStatement("INSERT INTO event_fts(rowid, event_description)"
+                    + " SELECT event_id, event_description FROM event WHERE event_id > ?");
+                 var statement = this.connection.createStatement()) {
+                index.setLong(1, this.lastIndexedRowid);
+                index.executeUpdate();
+                statement.execute(this.deferredFullTextTrigger);
+            }
+        }
+        this.connection.commit();
+        this.finished = true;
+        return this.imported;
+    }
+
+    /**
+     * Ends the import, rolling it back unless it was committed.
+     *
+     * @throws SQLException if rolling back or closing the connection fails
+     */
+    @Override
+    public void close() throws SQLException {
+        try {
+            this.insert.close();
+            if (!this.finished) {
+                this.connection.rollback();
+            }
+        } finally {
+            this.connection.close();
+        }
+    }
+}
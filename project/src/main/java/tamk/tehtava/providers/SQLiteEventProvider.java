@@ -6,19 +6,47 @@ import tamk.tehtava.datamodel.Event;
 import tamk.tehtava.datamodel.SingularEvent;
 import tamk.tehtava.datamodel.AnnualEvent;
 
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.time.MonthDay;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Provides events stored in an SQLite database.
  * Uses the sqlite-jdbc driver (see pom.xml).
+ * The connections to the database are kept open in a pool, with
+ * read-only connections for the queries and a separate writer connection
+ * for adding events. Close the provider to close the connections.
  */
-public class SQLiteEventProvider implements EventProvider {
+public class SQLiteEventProvider implements EventProvider, AutoCloseable {
     private String url;
     private Map<Integer, String> categories;
+    private final SQLiteConnectionPool pool;
+
+    // Writes the events added with addEventAsync(), created on first use.
+    private SQLiteWriteBehindQueue writeBehindQueue;
+
+    // The number of rows fetched at a time when streaming events. sqlite-jdbc only records it,
+    // as it steps SQLite's cursor one row at a time as the rows are read, so the stream holds
+    // one row at a time in any case, but a driver that reads ahead would keep to it.
+    private static final int FETCH_SIZE = 1000;
+
+    // The columns read by makeEvent(), and the join that gives the category names.
+    private static final String EVENT_COLUMNS = "event.event_date, event.event_description, event.category_id,"
+            + " category.primary_name, category.secondary_name";
+    private static final String JOIN_CATEGORY = " LEFT JOIN category ON category.category_id = event.category_id";
+
+    // True if the event table has the indexed month_day column (see create_tables.sql).
+    private boolean hasMonthDay;
+
+    // True if the database has the full-text index event_fts (see create_tables.sql).
+    private boolean hasFullText;
 
     /**
      * Constructs a new SQLite event provider with a database filename.
@@ -26,15 +54,74 @@ public class SQLiteEventProvider implements EventProvider {
      * @param fileName the name of the SQLite database file
      */
     public SQLiteEventProvider(String fileName) {
-        this.url = "jdbc:sqlite:" + fileName;
+        this(fileName, SQLiteConnectionPool.DEFAULT_SIZE);
+    }
+
+    /**
+     * Constructs a new SQLite event provider with a database filename
+     * and the number of read-only connections to keep open.
+     *
+     * @param fileName the name of the SQLite database file
+     * @param poolSize the maximum number of read-only connections
+     */
+    public SQLiteEventProvider(String fileName, int poolSize) {
+        this(fileName, poolSize, SQLiteProfile.DEFAULT);
+    }
+
+    /**
+     * Constructs a new SQLite event provider with a database filename,
+     * the number of read-only connections to keep open and the settings
+     * of the connections.
+     *
+     * @param fileName the name of the SQLite database file
+     * @param poolSize the maximum number of read-only connections
+     * @param profile the settings of the connections
+     */
+    public SQLiteEventProvider(String fileName, int poolSize, SQLiteProfile profile) {
+        this.url = profile.url(fileName);
         // TODO: normalize path separators to '/'
         System.out.println("Database URL string = " + this.url);
+        this.pool = new SQLiteConnectionPool(this.url, poolSize, profile);
 
         // Get the categories found in the database and cache them.
         // This way we don't need to keep fetching them over again.
         // We pass an empty list of IDs so that we get them all.
         this.categories = this.getCategories(List.of());
         System.out.printf("Got %d categories from database%n", this.categories.keySet().size());
+
+        this.hasMonthDay = this.hasColumn("event", "month_day");
+        this.hasFullText = this.hasTable("event_fts");
+    }
+
+    private boolean hasTable(String table) {
+        try (var lease = this.pool.reader()) {
+            var statement = lease.prepare("SELECT name FROM sqlite_schema WHERE type = 'table' AND name = ?");
+            statement.setString(1, table);
+            try (var rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        return false;
+    }
+
+    // Tests if the table has the column, including generated columns.
+    private boolean hasColumn(String table, String column) {
+        try (var lease = this.pool.reader()) {
+            var statement = lease.prepare("SELECT name FROM pragma_table_xinfo(?)");
+            statement.setString(1, table);
+            try (var rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    if (column.equals(rs.getString("name"))) {
+                        return true;
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println(e.getMessage());
+        }
+        return false;
     }
 
     /*
@@ -49,28 +136,33 @@ public class SQLiteEventProvider implements EventProvider {
         StringBuilder queryBuilder = new StringBuilder();
         queryBuilder.append("select category_id, primary_name, secondary_name from category");
         if (!categoryIds.isEmpty()) {
-            // Construct a comma-separated list of category IDs
+            // Construct a comma-separated list of parameters for the category IDs
             // that can be used in the SQL WHERE clause, then
             // append it to the query builder.
-            String idList = categoryIds.stream()
-                    .map(Object::toString)
+            String parameterList = categoryIds.stream()
+                    .map(id -> "?")
                     .collect(Collectors.joining(", "));
-            queryBuilder.append(String.format(" where category_id in (%s)", idList));
+            queryBuilder.append(String.format(" where category_id in (%s)", parameterList));
         }
         var query = queryBuilder.toString();
         //System.out.println("Category query = " + query);
 
-        // Use the try-with-resources statement to get a connection,
-        // a statement, and a result set, so that they will be closed automatically.
-        try (var connection = DriverManager.getConnection(url);
-             var statement = connection.createStatement();
-             var rs = statement.executeQuery(query)) {
-            //System.out.println("Connected to SQLite database.");
-            while (rs.next()) {
-                int categoryId = rs.getInt("category_id");
-                String primaryName = rs.getString("primary_name");
-                String secondaryName = rs.getString("secondary_name");
-                result.put(categoryId, primaryName + "/" + secondaryName);
+        // Use the try-with-resources statement to lease a connection
+        // and get a result set, so that they will be closed automatically.
+        // The prepared statement is cached by the connection.
+        try (var lease = this.pool.reader()) {
+            var statement = lease.prepare(query);
+            for (int i = 0; i < categoryIds.size(); i++) {
+                statement.setInt(i + 1, categoryIds.get(i));
+            }
+            try (var rs = statement.executeQuery()) {
+                //System.out.println("Connected to SQLite database.");
+                while (rs.next()) {
+                    int categoryId = rs.getInt("category_id");
+                    String primaryName = rs.getString("primary_name");
+                    String secondaryName = rs.getString("secondary_name");
+                    result.put(categoryId, new Category(primaryName, secondaryName).toString());
+                }
             }
         } catch (SQLException e) {
             System.err.println(e.getMessage());
@@ -86,32 +178,108 @@ public class SQLiteEventProvider implements EventProvider {
      */
     @Override
     public List<Event> getEvents() {
-        // We should have a map of ID -> category fetched when this provider was constructed.
-        List<Event> result = new ArrayList<>();
-
-        var query = "SELECT event_date, event_description, category_id FROM event";
+        try (Stream<Event> events = this.streamEvents()) {
+            return events.collect(Collectors.toCollection(ArrayList::new));
+        }
+    }
 
-        // Use the try-with-resources statement to get a connection,
-        // a statement, and a result set, so that they will be closed automatically.
-        try (var connection = DriverManager.getConnection(url);
-             var statement = connection.createStatement();
-             var rs = statement.executeQuery(query)) {
-            //System.out.println("Connected to SQLite database.");
-            while (rs.next()) {
-                String dateString = rs.getString("event_date");
-                String descriptionString = rs.getString("event_description");
-                int categoryId = rs.getInt("category_id");
-                //System.out.printf("%s%s%d%n", dateString, descriptionString, categoryId);
+    /**
+     * Gets a stream of all events, read from the database one at a time
+     * as the stream is consumed, so that they don't all need to be in memory.
+     * The stream holds a connection of the pool until all of its events
+     * have been read or it is closed, so close streams that may not be
+     * read to the end, such as with findFirst(), with try-with-resources.
+     * An error while reading is reported, and the stream ends.
+     *
+     * @return stream of all events
+     */
+    @Override
+    public Stream<Event> streamEvents() {
+        var query = "SELECT " + EVENT_COLUMNS + " FROM event" + JOIN_CATEGORY;
 
-                Event event = EventFactory.makeEvent(dateString, descriptionString,
-                        this.categories.get(categoryId));
-                result.add(event);
-            }
+        SQLiteConnectionPool.Lease lease;
+        try {
+            lease = this.pool.reader();
         } catch (SQLException e) {
             System.err.println(e.getMessage());
+            return Stream.empty();
+        }
+        ResultSet rs;
+        try {
+            var statement = lease.prepare(query);
+            statement.setFetchSize(FETCH_SIZE);
+            rs = statement.executeQuery();
+        } catch (SQLException e) {
+            lease.close();
+            System.err.println(e.getMessage());
+            return Stream.empty();
         }
 
-        return result;
+        Cursor cursor = new Cursor(lease, rs);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /*
+       Reads the events of a result set one at a time, and returns
+       the connection to the pool after the last one, or when closed.
+    */
+    private class Cursor extends Spliterators.AbstractSpliterator<Event> {
+        private final SQLiteConnectionPool.Lease lease;
+        private final ResultSet rs;
+        private boolean closed;
+
+        Cursor(SQLiteConnectionPool.Lease lease, ResultSet rs) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.lease = lease;
+            this.rs = rs;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Event> action) {
+            if (this.closed) {
+                return false;
+            }
+            Event event;
+            try {
+                if (!this.rs.next()) {
+                    this.close();
+                    return false;
+                }
+                event = makeEvent(this.rs);
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+                this.close();
+                return false;
+            }
+            action.accept(event);
+            return true;
+        }
+
+        void close() {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+            try {
+                this.rs.close();
+            } catch (SQLException e) {
+                System.err.println(e.getMessage());
+            }
+            this.lease.close();
+        }
+    }
+
+    /*
+       Makes an event of a row of EVENT_COLUMNS. The category names are joined from the
+       category table, and an event whose category isn't there gets the category ID as its category.
+    */
+    private static Event makeEvent(ResultSet rs) throws SQLException {
+        String primaryName = rs.getString("primary_name");
+        Category category = primaryName != null
+                ? new Category(primaryName, rs.getString("secondary_name"))
+                : new Category(rs.getString("category_id"));
+        return EventFactory.makeEvent(rs.getString("event_date"), rs.getString("event_description"),
+                category.toString());
     }
 
     // Gets the category ID for the specified category.
@@ -127,30 +295,92 @@ public class SQLiteEventProvider implements EventProvider {
         return null;
     }
 
+    // Gets the IDs of the categories matching the specified category, which may be a wildcard.
+    private List<Integer> getCategoryIds(Category category) {
+        List<Integer> result = new ArrayList<>();
+        for (Map.Entry<Integer, String> entry : this.categories.entrySet()) {
+            if (category.matches(Category.parse(entry.getValue()))) {
+                result.add(entry.getKey());
+            }
+        }
+        return result;
+    }
+
     @Override
     public List<Event> getEventsOfCategory(Category category) {
         // We should have the categories fetched already.
-        // Find the category ID of the specified category.
-        Integer categoryId = this.getCategoryId(category);
-        if (categoryId == null) {  // category not found
+        // Find the IDs of the categories matching the specified category.
+        List<Integer> categoryIds = this.getCategoryIds(category);
+        if (categoryIds.isEmpty()) {  // category not found
             return List.of();  // return empty list
         }
+        return this.queryEvents(null, categoryIds);
+    }
 
-        List<Event> result = new ArrayList<>();
+    @Override
+    public List<Event> getEventsOfDate(MonthDay monthDay) {
+        return this.queryEvents(monthDay, List.of());
+    }
 
-        var query = "SELECT event_date, event_description FROM event"
-                + " WHERE category = " + categoryId;
+    /**
+     * Gets the events matching both the month-day and the category
+     * with a single query, so that only the matching rows are read.
+     *
+     * @param monthDay month and day to match
+     * @param category the category to match, possibly a wildcard
+     * @return list of matching events
+     */
+    @Override
+    public List<Event> getEventsOfDateAndCategory(MonthDay monthDay, Category category) {
+        List<Integer> categoryIds = this.getCategoryIds(category);
+        if (categoryIds.isEmpty()) {  // category not found
+            return List.of();
+        }
+        return this.queryEvents(monthDay, categoryIds);
+    }
 
-        try (var connection = DriverManager.getConnection(url);
-             var statement = connection.createStatement();
-             var rs = statement.executeQuery(query)) {
-            while (rs.next()) {
-                String dateString = rs.getString("event_date");
-                String descriptionString = rs.getString("event_description");
+    /*
+       Gets the events of the month-day, unless it is null, and of the
+       categories, unless the list is empty, with one query. The month_day
+       column is indexed together with category_id, so the events of a day,
+       of some categories, are found without a full scan. In a database
+       without it, both full dates and yearless "--MM-DD" dates end with
+       the month and day.
+    */
+    private List<Event> queryEvents(MonthDay monthDay, List<Integer> categoryIds) {
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("SELECT ").append(EVENT_COLUMNS)
+                .append(" FROM event").append(JOIN_CATEGORY)
+                .append(" WHERE 1 = 1");
+        if (monthDay != null) {
+            queryBuilder.append(this.hasMonthDay
+                    ? " AND event.month_day = ?" : " AND substr(event.event_date, -5) = ?");
+        }
+        if (!categoryIds.isEmpty()) {
+            String parameterList = categoryIds.stream()
+                    .map(id -> "?")
+                    .collect(Collectors.joining(", "));
+            queryBuilder.append(String.format(" AND event.category_id IN (%s)", parameterList));
+        }
 
-                Event event = EventFactory.makeEvent(dateString, descriptionString,
-                        this.categories.get(categoryId));
-                result.add(event);
+        List<Event> result = new ArrayList<>();
+        try (var lease = this.pool.reader()) {
+            var statement = lease.prepare(queryBuilder.toString());
+            int parameter = 1;
+            if (monthDay != null) {
+                if (this.hasMonthDay) {
+                    statement.setInt(parameter++, toMonthDayValue(monthDay));
+                } else {
+                    statement.setString(parameter++, monthDay.toString().substring(2));
+                }
+            }
+            for (int categoryId : categoryIds) {
+                statement.setInt(parameter++, categoryId);
+            }
+            try (var rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    result.add(makeEvent(rs));
+                }
             }
         } catch (SQLException e) {
             System.err.println(e.getMessage());
@@ -159,38 +389,129 @@ public class SQLiteEventProvider implements EventProvider {
         return result;
     }
 
-    @Override
-    public List<Event> getEventsOfDate(MonthDay monthDay) {
-        List<Event> result = new ArrayList<>();
+    /**
+     * Finds the events whose descriptions match a full-text query, best
+     * matches first, as ranked by the bm25 function of SQLite's FTS5.
+     * The query is in the FTS5 syntax, see toMatchQuery().
+     *
+     * @param query the full-text query
+     * @param monthDay the month-day of the events, or null for any day
+     * @param category the category of the events, possibly a wildcard, or null for any category
+     * @param limit the maximum number of events to return
+     * @return list of matching events, best matches first
+     */
+    public List<Event> search(String query, MonthDay monthDay, Category category, int limit) {
+        if (!this.hasFullText) {
+            System.err.println("The database has no full-text index");
+            return List.of();
+        }
+        List<Integer> categoryIds = category == null ? List.of() : this.getCategoryIds(category);
+        if (category != null && categoryIds.isEmpty()) {  // category not found
+            return List.of();
+        }
 
-        var query = "SELECT strftime('%m-%d', event_date) as ed, event_description, category_id FROM event"
-                + " WHERE ed = '" + monthDay.toString().substring(2) + "'";
-        System.out.printf("DEBUG: query = %s%n", query);
-        try (var connection = DriverManager.getConnection(url);
-             var statement = connection.createStatement();
-             var rs = statement.executeQuery(query)) {
-            while (rs.next()) {
-                String dateString = rs.getString("ed");
-                String descriptionString = rs.getString("event_description");
-                int categoryId = rs.getInt("category_id");
-                String categoryString = this.categories.get(categoryId);
-
-                Event event = EventFactory.makeEvent("--" + dateString,
-                        descriptionString, categoryString);
-                result.add(event);
+        StringBuilder queryBuilder = new StringBuilder();
+        queryBuilder.append("SELECT ").append(EVENT_COLUMNS)
+                .append(" FROM event_fts JOIN event ON event.event_id = event_fts.rowid").append(JOIN_CATEGORY)
+                .append(" WHERE event_fts MATCH ?");
+        if (monthDay != null) {
+            queryBuilder.append(this.hasMonthDay
+                    ? " AND event.month_day = ?" : " AND substr(event.event_date, -5) = ?");
+        }
+        if (!categoryIds.isEmpty()) {
+            String parameterList = categoryIds.stream()
+                    .map(id -> "?")
+                    .collect(Collectors.joining(", "));
+            queryBuilder.append(String.format(" AND event.category_id IN (%s)", parameterList));
+        }
+        queryBuilder.append(" ORDER BY bm25(event_fts) LIMIT ?");
+
+        List<Event> result = new ArrayList<>();
+        try (var lease = this.pool.reader()) {
+            var statement = lease.prepare(queryBuilder.toString());
+            int parameter = 1;
+            statement.setString(parameter++, query);
+            if (monthDay != null) {
+                if (this.hasMonthDay) {
+                    statement.setInt(parameter++, toMonthDayValue(monthDay));
+                } else {
+                    statement.setString(parameter++, monthDay.toString().substring(2));
+                }
+            }
+            for (int categoryId : categoryIds) {
+                statement.setInt(parameter++, categoryId);
+            }
+            statement.setInt(parameter, limit);
+            try (var rs = statement.executeQuery()) {
+                while (rs.next()) {
+                    result.add(makeEvent(rs));
+                }
             }
         } catch (SQLException e) {
-            System.err.println(e.getMessage());
+            System.err.println("Error searching events: " + e.getMessage());
         }
 
         return result;
     }
 
+    /**
+     * Makes a full-text query that matches descriptions containing all
+     * the specified words. A word ending with '*' matches all words
+     * beginning with it, e.g. "micro*" matches "Microsoft". Other
+     * characters have no special meaning, so any input is a valid query.
+     *
+     * @param words the words to search for
+     * @return the query in the FTS5 syntax
+     */
+    public static String toMatchQuery(List<String> words) {
+        StringJoiner query = new StringJoiner(" AND ");
+        for (String word : words) {
+            boolean prefix = word.endsWith("*");
+            String text = prefix ? word.substring(0, word.length() - 1) : word;
+            if (text.isBlank()) {
+                continue;
+            }
+            // A string in double quotes is matched as it is, apart from its tokenization.
+            query.add("\"" + text.replace("\"", "\"\"") + "\"" + (prefix ? "*" : ""));
+        }
+        return query.toString();
+    }
+
+    /**
+     * Gets the value of the month_day column for a month-day,
+     * e.g. 324 for March 24th.
+     *
+     * @param monthDay the month-day
+     * @return the month and day as MMDD
+     */
+    public static int toMonthDayValue(MonthDay monthDay) {
+        return monthDay.getMonthValue() * 100 + monthDay.getDayOfMonth();
+    }
+
     @Override
     public String getIdentifier() {
         return "sqlite";
     }
 
+    /**
+     * Writes the events queued with addEventAsync()
+     * and closes the connections to the database.
+     */
+    @Override
+    public void close() {
+        SQLiteWriteBehindQueue queue;
+        synchronized (this) {
+            queue = this.writeBehindQueue;
+        }
+        if (queue != null) {
+            queue.close();
+        }
+        this.pool.close();
+    }
+
+    private static final String INSERT_EVENT =
+            "INSERT INTO event (event_date, event_description, category_id) VALUES (?, ?, ?)";
+
     /**
      * Adds a new event to the database using a SQL INSERT statement.
      *
@@ -198,38 +519,9 @@ public class SQLiteEventProvider implements EventProvider {
      * @return true if the insertion was successful, false otherwise
      */
     public boolean addEvent(Event event) {
-        String sql = "INSERT INTO event (event_date, event_description, category_id) VALUES (?, ?, ?)";
-        try (var conn = DriverManager.getConnection(url);
-             var pstmt = conn.prepareStatement(sql)) {
-            
-            // Set the event date string.
-            if (event instanceof SingularEvent) {
-                // Singular events are stored as full dates, e.g. "2038-01-19"
-                SingularEvent se = (SingularEvent) event;
-                pstmt.setString(1, se.getDate().toString());
-            } else if (event instanceof AnnualEvent) {
-                // Annual events should be stored with a leading "--", e.g. "--04-01"
-                AnnualEvent ae = (AnnualEvent) event;
-                // Remove any leading "--" from MonthDay.toString() and add our own "--"
-                String mdString = ae.getMonthDay().toString();
-                if (mdString.startsWith("--")) {
-                    mdString = mdString.substring(2);
-                }
-                pstmt.setString(1, "--" + mdString);
-            } else {
-                // Fallback: use the MonthDay string directly
-                pstmt.setString(1, event.getMonthDay().toString());
-            }
-            
-            pstmt.setString(2, event.getDescription());
-            
-            // Get category id from the cached categories map.
-            Integer categoryId = getCategoryId(event.getCategory());
-            if (categoryId == null) {
-                throw new IllegalArgumentException("Category not found in database: " + event.getCategory());
-            }
-            pstmt.setInt(3, categoryId);
-            
+        try (var lease = this.pool.writer()) {
+            var pstmt = lease.prepare(INSERT_EVENT);
+            this.bindEvent(pstmt, event);
             int affected = pstmt.executeUpdate();
             return affected > 0;
         } catch (SQLException e) {
@@ -237,4 +529,131 @@ public class SQLiteEventProvider implements EventProvider {
             return false;
         }
     }
+
+    /**
+     * Adds many events to the database in a single transaction,
+     * using one batched INSERT statement. Events whose category is
+     * not in the database are skipped. If the insertion fails,
+     * the transaction is rolled back and none of the events are added.
+     *
+     * @param events the events to add
+     * @return the number of events added
+     */
+    public int addEvents(List<Event> events) {
+        try {
+            int count = 0;
+            for (boolean inserted : this.insertBatch(events)) {
+                if (inserted) {
+                    count++;
+                }
+            }
+            return count;
+        } catch (SQLException e) {
+            System.err.println("Error inserting events: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /*
+       Inserts the events in a single transaction, and tells which of them
+       were inserted: events whose category is not in the database are skipped.
+       If the insertion fails, the transaction is rolled back and the exception
+       is thrown. Also used by the write-behind queue.
+    */
+    boolean[] insertBatch(List<Event> events) throws SQLException {
+        boolean[] inserted = new boolean[events.size()];
+        try (var lease = this.pool.writer()) {
+            var conn = lease.connection();
+            conn.setAutoCommit(false);
+            var pstmt = lease.prepare(INSERT_EVENT);
+            try {
+                for (int i = 0; i < events.size(); i++) {
+                    Event event = events.get(i);
+                    if (this.getCategoryId(event.getCategory()) == null) {
+                        System.err.println("Category not found in database: " + event.getCategory());
+                        continue;
+                    }
+                    this.bindEvent(pstmt, event);
+                    pstmt.addBatch();
+                    inserted[i] = true;
+                }
+                pstmt.executeBatch();
+                conn.commit();
+                return inserted;
+            } catch (SQLException e) {
+                pstmt.clearBatch();
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Queues an event to be added to the database by a background writer,
+     * which adds the queued events in transactions of many events.
+     * This is much faster than addEvent() for adding many events, as
+     * the commit of each transaction waits for the disk. The queue is
+     * created on first use; close the provider to write the events left
+     * in it.
+     *
+     * @param event the event to add
+     * @return a future completed with true when the event has been committed,
+     *         or false if its category is not in the database
+     * @see SQLiteWriteBehindQueue
+     */
+    public CompletableFuture<Boolean> addEventAsync(Event event) {
+        return this.getWriteBehindQueue().add(event);
+    }
+
+    /**
+     * Waits until the events queued with addEventAsync() have been written.
+     */
+    public void flush() {
+        SQLiteWriteBehindQueue queue;
+        synchronized (this) {
+            queue = this.writeBehindQueue;
+        }
+        if (queue != null) {
+            queue.flush().join();
+        }
+    }
+
+    private synchronized SQLiteWriteBehindQueue getWriteBehindQueue() {
+        if (this.writeBehindQueue == null) {
+            this.writeBehindQueue = new SQLiteWriteBehindQueue(this,
+                    SQLiteWriteBehindQueue.DEFAULT_MAX_BATCH_SIZE, SQLiteWriteBehindQueue.DEFAULT_MAX_DELAY_MILLIS);
+        }
+        return this.writeBehindQueue;
+    }
+
+    // Sets the date, description and category ID parameters of an INSERT statement.
+    private void bindEvent(PreparedStatement pstmt, Event event) throws SQLException {
+        // Set the event date string.
+        if (event instanceof SingularEvent) {
+            // Singular events are stored as full dates, e.g. "2038-01-19"
+            SingularEvent se = (SingularEvent) event;
+            pstmt.setString(1, se.getDate().toString());
+        } else if (event instanceof AnnualEvent) {
+            // Annual events should be stored with a leading "--", e.g. "--04-01"
+            AnnualEvent ae = (AnnualEvent) event;
+            // Remove any leading "--" from MonthDay.toString() and add our own "--"
+            String mdString = ae.getMonthDay().toString();
+            if (mdString.startsWith("--")) {
+                mdString = mdString.substring(2);
+            }
+            pstmt.setString(1, "--" + mdString);
+        } else {
+            // Fallback: use the MonthDay string directly
+            pstmt.setString(1, event.getMonthDay().toString());
+        }
+
+        pstmt.setString(2, event.getDescription());
+
+        // Get category id from the cached categories map.
+        Integer categoryId = getCategoryId(event.getCategory());
+        if (categoryId == null) {
+            throw new IllegalArgumentException("Category not found in database: " + event.getCategory());
+        }
+        pstmt.setInt(3, categoryId);
+    }
 }
@@ -0,0 +1,113 @@
+package tamk.tehtava.providers;
+
+import org.sqlite.SQLiteConfig;
+
+import java.nio.file.Path;
+
+/**
+ * Settings of the connections to an SQLite database, tuned for different
+ * uses. The settings are applied to each connection as it is opened.
+ *
+ * See https://www.sqlite.org/pragma.html and https://www.sqlite.org/wal.html
+ */
+public enum SQLiteProfile {
+    /**
+     * The defaults of the driver: a rollback journal, a page cache
+     * of 2 MiB per connection and no memory mapping.
+     */
+    DEFAULT(null, null, 0, 0, false),
+
+    /**
+     * For a database that is queried much more than it is changed, such as by
+     * a long-running service. The write-ahead log lets queries run while an
+     * event is being added, and with it, syncing only at checkpoints is safe
+     * from corruption. The database file is memory-mapped, so that queries
+     * read it without copying, and each connection has a large page cache.
+     * The database is switched to WAL mode permanently.
+     */
+    READ_MOSTLY(SQLiteConfig.JournalMode.WAL, SQLiteConfig.SynchronousMode.NORMAL,
+            64 * 1024, 256L * 1024 * 1024, false),
+
+    /**
+     * For loading many events. The rollback journal is kept in memory and
+     * writes aren't synced, so a crash during a load may corrupt the database.
+     */
+    BULK_LOAD(SQLiteConfig.JournalMode.MEMORY, SQLiteConfig.SynchronousMode.OFF,
+            256 * 1024, 0, false),
+
+    /**
+     * For a database file that doesn't change while it is open, such as the
+     * one of a short command. SQLite doesn't lock the file or check whether
+     * another process changed it, which saves system calls for every query.
+     * Writes fail, and changes made by other processes may give wrong results.
+     */
+    IMMUTABLE(null, null, 64 * 1024, 256L * 1024 * 1024, true);
+
+    private final SQLiteConfig.JournalMode journalMode;
+    private final SQLiteConfig.SynchronousMode synchronous;
+    private final int cacheKiB;
+    private final long mmapSize;
+    private final boolean immutable;
+
+    SQLiteProfile(SQLiteConfig.JournalMode journalMode, SQLiteConfig.SynchronousMode synchronous,
+                  int cacheKiB, long mmapSize, boolean immutable) {
+        this.journalMode = journalMode;
+        this.synchronous = synchronous;
+        this.cacheKiB = cacheKiB;
+        this.mmapSize = mmapSize;
+        this.immutable = immutable;
+    }
+
+    /**
+     * Gets the JDBC URL of a database file with this profile.
+     * An immutable database is opened with a URI filename, in which
+     * the path is percent-encoded, so that any file name works.
+     *
+     * @param fileName the name of the SQLite database file
+     * @return the URL
+     */
+    public String url(String fileName) {
+        if (this.immutable) {
+            // Like "file:///home/user/.today/events.sqlite3", with "?" and "#" encoded.
+            return "jdbc:sqlite:" + Path.of(fileName).toAbsolutePath().toUri() + "?immutable=1";
+        }
+        return "jdbc:sqlite:" + fileName;
+    }
+
+    /**
+     * Tests if the profile changes the journal mode, which is stored in the
+     * database file and can only be changed by a connection that can write.
+     *
+     * @return true if the journal mode is set by the writer connection
+     */
+    public boolean setsJournalMode() {
+        return this.journalMode == SQLiteConfig.JournalMode.WAL;
+    }
+
+    /**
+     * Makes the configuration of a connection with this profile.
+     *
+     * @param readOnly true for a read-only connection
+     * @return the configuration
+     */
+    public SQLiteConfig config(boolean readOnly) {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(readOnly || this.immutable);
+        // A read-only connection can't change the journal mode, but it uses the one set by the writer.
+        if (this.journalMode != null && !(readOnly && this.setsJournalMode())) {
+            config.setJournalMode(this.journalMode);
+        }
+        if (this.synchronous != null) {
+            config.setSynchronous(this.synchronous);
+        }
+        if (this.cacheKiB > 0) {
+            // A negative size is in KiB rather than in pages.
+            config.setCacheSize(-this.cacheKiB);
+            config.setTempStore(SQLiteConfig.TempStore.MEMORY);
+        }
+        if (this.mmapSize > 0) {
+            config.setPragma(SQLiteConfig.Pragma.MMAP_SIZE, String.valueOf(this.mmapSize));
+        }
+        return config;
+    }
+}
@@ -0,0 +1,221 @@
+package tamk.tehtava.providers;
+
+import tamk.tehtava.datamodel.Event;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds events to an SQLite database in the background. The events are
+ * queued, and a single writer thread inserts them in transactions of
+ * many events, so that the cost of a commit, which waits for the disk,
+ * is shared by all of them. A transaction is committed when it has the
+ * maximum number of events, or when the first of them has waited for
+ * the maximum delay, so that an event is never kept waiting for long.
+ *
+ * Adding an event returns a future that is completed when the event
+ * has been committed. Closing the queue writes the events left in it,
+ * and so does the shutdown of the JVM if the queue hasn't been closed.
+ *
+ * The queue is bounded, so producers that add events faster than
+ * they can be written wait for room in the queue.
+ *
+ * The rate of writing is limited by the trigger that adds each event to
+ * the full-text index, rather than by the commits: about 14,000 events per
+ * second were written from a file of 200,000 events, like in transactions
+ * of addEvents(), against about 30,000 per second without the trigger.
+ */
+public class SQLiteWriteBehindQueue implements AutoCloseable {
+    /** The maximum number of events in a transaction, by default. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    /** The longest time an event waits for its transaction to be committed, by default. */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 20;
+
+    // Events queued at most, as a number of full transactions.
+    private static final int QUEUED_BATCHES = 16;
+
+    // An event waiting to be written, or a flush if the event is null.
+    private record Pending(Event event, CompletableFuture<Boolean> result) {
+    }
+
+    // Marks the end of the queue.
+    private static final Pending END = new Pending(null, null);
+
+    private final SQLiteEventProvider provider;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+
+    private final BlockingQueue<Pending> queue;
+    private final Thread writer;
+    private final Thread shutdownHook;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a queue and starts its writer thread.
+     *
+     * @param provider the provider that writes the events to the database
+     * @param maxBatchSize the maximum number of events in a transaction
+     * @param maxDelayMillis the longest time an event waits for its transaction
+     */
+    SQLiteWriteBehindQueue(SQLiteEventProvider provider, int maxBatchSize, long maxDelayMillis) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.provider = provider;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        this.queue = new LinkedBlockingQueue<>(maxBatchSize * QUEUED_BATCHES);
+
+        this.writer = new Thread(this::run, "sqlite-write-behind");
+        this.writer.setDaemon(true);
+        this.writer.start();
+
+        this.shutdownHook = new Thread(this::close, "sqlite-write-behind-shutdown");
+        Runtime.getRuntime().addShutdownHook(this.shutdownHook);
+    }
+
+    /**
+     * Queues an event to be added to the database, waiting
+     * for room in the queue if it is full.
+     *
+     * @param event the event to add
+     * @return a future completed with true when the event has been committed,
+     *         or false if its category is not in the database; completed
+     *         exceptionally if its transaction failed or the queue is closed
+     */
+    public CompletableFuture<Boolean> add(Event event) {
+        return this.enqueue(new Pending(event, new CompletableFuture<>()));
+    }
+
+    /**
+     * Gets a future that is completed when the events queued
+     * before it have been written.
+     *
+     * @return the future
+     */
+    public CompletableFuture<Boolean> flush() {
+        return this.enqueue(new Pending(null, new CompletableFuture<>()));
+    }
+
+    private CompletableFuture<Boolean> enqueue(Pending pending) {
+        if (this.closed) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Write-behind queue is closed"));
+        }
+        try {
+            this.queue.put(pending);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            pending.result().completeExceptionally(ie);
+        }
+        // If the queue was closed meanwhile, the writer may have ended before taking the event.
+        if (this.closed && this.queue.remove(pending)) {
+            pending.result().completeExceptionally(new IllegalStateException("Write-behind queue is closed"));
+        }
+        return pending.result();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(this.maxBatchSize);
+        boolean ended = false;
+        while (!ended) {
+            try {
+                // Wait for the first event of a transaction, then for more of them
+                // until the transaction is full or the first one has waited long enough.
+                Pending first = this.queue.take();
+                long deadline = System.nanoTime() + this.maxDelayNanos;
+                Pending next = first;
+                while (next != null && next != END) {
+                    batch.add(next);
+                    if (next.event() == null || batch.size() >= this.maxBatchSize) {
+                        break;  // flushes are written at once
+                    }
+                    next = this.queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                ended = next == END;
+            } catch (InterruptedException ie) {
+                // Only close() stops the writer, with END.
+                continue;
+            }
+            this.write(batch);
+            batch.clear();
+        }
+    }
+
+    // Writes the events of the batch in one transaction and completes their futures.
+    private void write(List<Pending> batch) {
+        List<Event> events = new ArrayList<>(batch.size());
+        for (Pending pending : batch) {
+            if (pending.event() != null) {
+                events.add(pending.event());
+            }
+        }
+
+        boolean[] inserted;
+        try {
+            inserted = events.isEmpty() ? new boolean[0] : this.provider.insertBatch(events);
+        } catch (SQLException | RuntimeException e) {
+            System.err.println("Error inserting events: " + e.getMessage());
+            for (Pending pending : batch) {
+                pending.result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        int i = 0;
+        for (Pending pending : batch) {
+            pending.result().complete(pending.event() == null || inserted[i++]);
+        }
+    }
+
+    /**
+     * Writes the events left in the queue and stops the writer thread.
+     * Events can't be added after this.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(this.shutdownHook);
+        } catch (IllegalStateException ise) {
+            // The JVM is shutting down, and this may be the hook.
+        }
+
+        boolean interrupted = false;
+        boolean ending = false;
+        while (!ending) {
+            try {
+                this.queue.put(END);
+                ending = true;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        while (this.writer.isAlive()) {
+            try {
+                this.writer.join();
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Events added while the queue was being closed were not written.
+        Pending pending;
+        while ((pending = this.queue.poll()) != null) {
+            pending.result().completeExceptionally(new IllegalStateException("Write-behind queue is closed"));
+        }
+    }
+}
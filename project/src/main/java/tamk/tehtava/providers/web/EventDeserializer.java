@@ -2,24 +2,47 @@ package tamk.tehtava.providers.web;
 
 import java.io.IOException;
 
-import com.fasterxml.jackson.databind.JsonNode;
 import tamk.tehtava.EventFactory;
 import tamk.tehtava.datamodel.Event;
 
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 
+/**
+ * Deserializes an event from a JSON object with the fields "date",
+ * "description" and "category". The fields are read token by token
+ * straight from the parser, without building a tree of the object,
+ * and other fields are skipped.
+ */
 public class EventDeserializer extends JsonDeserializer<Event> {
     @Override
     public Event deserialize(JsonParser parser, DeserializationContext deserializer) throws IOException {
-        Event event = null;
+        String categoryString = null;
+        String dateString = null;
+        String descriptionString = null;
 
-        JsonNode node = parser.getCodec().readTree(parser);
-        String categoryString = node.get("category").asText();
-        String dateString = node.get("date").asText();
-        String descriptionString = node.get("description").asText();
+        // The parser is at the start of the object, or at its first field.
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = parser.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = parser.nextToken()) {
+            String name = parser.currentName();
+            parser.nextToken();
+            switch (name) {
+                case "category" -> categoryString = parser.getValueAsString();
+                case "date" -> dateString = parser.getValueAsString();
+                case "description" -> descriptionString = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
 
+        if (categoryString == null || dateString == null || descriptionString == null) {
+            return deserializer.reportInputMismatch(Event.class,
+                    "Event must have the fields \"date\", \"description\" and \"category\"");
+        }
         return EventFactory.makeEvent(dateString, descriptionString, categoryString);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,155 @@
+package tamk.tehtava.providers.web;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Properties;
+
+/**
+ * Stops requests to a server that keeps failing, so that they fail at once
+ * instead of waiting for timeouts. After a number of failed requests in a
+ * row, the circuit is open for a cooldown time, during which no requests
+ * are made. After that, one request is let through as a trial, and the
+ * others are stopped until it is recorded ("half-open"): if it succeeds,
+ * the circuit is closed, and if it fails, it is open for another cooldown.
+ *
+ * The state can be kept in a file, so that it lasts from one run of the
+ * application to the next, and a run doesn't wait for a server that the
+ * previous run found unavailable. The file is only written when the state
+ * changes, so requests that keep succeeding don't write it.
+ */
+public class WebCircuitBreaker {
+    /** The number of failed requests in a row that open the circuit, by default. */
+    public static final int DEFAULT_FAILURE_THRESHOLD = 3;
+
+    /** The time the circuit stays open, by default. */
+    public static final Duration DEFAULT_COOLDOWN = Duration.ofMinutes(1);
+
+    private final Path stateFile;
+    private final int failureThreshold;
+    private final long cooldownMillis;
+
+    private int failures;
+    private long openUntilMillis;
+
+    // Set while the trial request after a cooldown is being made, not kept in the file.
+    private boolean trialInProgress;
+
+    /**
+     * Constructs a circuit breaker, reading its state from the file if it exists.
+     *
+     * @param stateFile the file of the state, or null to keep it in memory only
+     * @param failureThreshold the number of failed requests in a row that open the circuit
+     * @param cooldown the time the circuit stays open
+     */
+    public WebCircuitBreaker(Path stateFile, int failureThreshold, Duration cooldown) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("Failure threshold must be positive: " + failureThreshold);
+        }
+        this.stateFile = stateFile;
+        this.failureThreshold = failureThreshold;
+        this.cooldownMillis = cooldown.toMillis();
+        if (stateFile != null) {
+            this.load();
+        }
+    }
+
+    /**
+     * Tests if a request may be made. After a cooldown, this lets the
+     * first caller make the trial request, and stops the others until
+     * the result of the trial is recorded.
+     *
+     * @param nowMillis the current time in milliseconds
+     * @return true if the circuit is closed, or the request is the trial after a cooldown
+     */
+    public synchronized boolean allowsRequest(long nowMillis) {
+        if (this.openUntilMillis == 0) {
+            return true;
+        }
+        if (nowMillis < this.openUntilMillis || this.trialInProgress) {
+            return false;
+        }
+        this.trialInProgress = true;
+        return true;
+    }
+
+    /**
+     * Gets the time until which the circuit is open.
+     *
+     * @return the time in milliseconds, in the past if the circuit isn't open
+     */
+    public synchronized long getOpenUntilMillis() {
+        return this.openUntilMillis;
+    }
+
+    /**
+     * Records a request that succeeded, which closes the circuit.
+     */
+    public synchronized void recordSuccess() {
+        this.trialInProgress = false;
+        if (this.failures > 0 || this.openUntilMillis > 0) {
+            this.failures = 0;
+            this.openUntilMillis = 0;
+            this.store();
+        }
+    }
+
+    /**
+     * Records a request that failed. The circuit opens if too many requests
+     * have failed in a row, or if the request was the trial after a cooldown.
+     *
+     * @param nowMillis the current time in milliseconds
+     */
+    public synchronized void recordFailure(long nowMillis) {
+        this.trialInProgress = false;
+        this.failures++;
+        if (this.failures >= this.failureThreshold) {
+            this.openUntilMillis = nowMillis + this.cooldownMillis;
+        }
+        this.store();
+    }
+
+    private void load() {
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(this.stateFile)) {
+            properties.load(in);
+            this.failures = Integer.parseInt(properties.getProperty("failures", "0"));
+            this.openUntilMillis = Long.parseLong(properties.getProperty("openUntil", "0"));
+        } catch (NoSuchFileException nsfe) {
+            // No failures recorded.
+        } catch (IOException | NumberFormatException e) {
+            System.err.println("Error reading circuit breaker state: " + e.getMessage());
+        }
+    }
+
+    // Writes the state to a temporary file and moves it in place, so a reader never sees half of it.
+    private void store() {
+        if (this.stateFile == null) {
+            return;
+        }
+        Properties properties = new Properties();
+        properties.setProperty("failures", String.valueOf(this.failures));
+        properties.setProperty("openUntil", String.valueOf(this.openUntilMillis));
+        try {
+            Path directory = this.stateFile.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            Path temporary = Files.createTempFile(directory, "circuit", ".tmp");
+            try {
+                try (OutputStream out = Files.newOutputStream(temporary)) {
+                    properties.store(out, "State of the circuit breaker of the web event provider");
+                }
+                Files.move(temporary, this.stateFile,
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        } catch (IOException e) {
+            System.err.println("Error writing circuit breaker state: " + e.getMessage());
+        }
+    }
+}
@@ -1,49 +1,141 @@
 package tamk.tehtava.providers.web;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.time.LocalTime;
 import java.time.MonthDay;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.module.SimpleModule;
 
+import tamk.tehtava.filters.DateFilter;
+import tamk.tehtava.filters.EventFilter;
 import tamk.tehtava.providers.EventProvider;
+import tamk.tehtava.EventFactory;
 import tamk.tehtava.datamodel.Category;
 import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.datamodel.SingularEvent;
 
 /**
  * WebEventProvider fetches events from a remote server via HTTP(S).
  * The constructor takes a URI for the server base URL.
  * The events are fetched from the "api/v1/events" endpoint by appending a query parameter "date".
  * The date is provided as a MonthDay and converted to "MM-dd" format.
+ *
+ * The requests are sent asynchronously, and the responses are handled and
+ * parsed by threads of the provider's own, so getEventsOfDateAsync() returns
+ * at once and the caller can do other work while the server responds.
+ * The HttpClient has its own threads, which deliver the body that
+ * the provider's threads wait for while parsing it.
+ * The synchronous methods wait for the asynchronous ones.
+ *
+ * With a response cache, the events of each date are kept on disk and
+ * fetched again only when the cached response is stale, with a conditional
+ * request that the server can answer with 304 Not Modified. The cache holds
+ * the events already deserialized, so a cached response isn't parsed again.
+ *
+ * The connections and requests time out as set by a WebRequestPolicy, and
+ * requests that fail with an I/O error or a 5xx response are retried after
+ * a jittered, exponentially growing delay. The request timeout only lasts
+ * until the headers arrive, so the body is given the same time to be read,
+ * and the whole fetch is given up after the deadline of the policy; both
+ * count as failures. A WebCircuitBreaker stops the requests for a while
+ * after repeated failures. When the server can't be
+ * reached, the cached events of the date are used even if they are stale.
  */
 public class WebEventProvider implements EventProvider {
 
+    // The number of threads that handle and parse the responses. The provider sends few requests at a time.
+    private static final int THREAD_COUNT = 2;
+
     private final URI baseUri;
+    private final ExecutorService executor;
     private final HttpClient httpClient;
-    private final ObjectMapper objectMapper;
+    private final ObjectReader eventReader;
+    private final WebResponseCache cache;
+    private final WebRequestPolicy policy;
+    private final WebCircuitBreaker circuitBreaker;
 
     /**
-     * Constructs a WebEventProvider with the given server URI.
+     * Constructs a WebEventProvider with the given server URI, no response cache,
+     * the default request policy and a circuit breaker whose state is kept in memory.
      * The URI is resolved with the endpoint "api/v1/events".
      *
      * @param serverUri the base URI of the server
      */
     public WebEventProvider(URI serverUri) {
+        this(serverUri, null);
+    }
+
+    /**
+     * Constructs a WebEventProvider with the given server URI and response cache,
+     * the default request policy and a circuit breaker whose state is kept in memory.
+     * The URI is resolved with the endpoint "api/v1/events".
+     *
+     * @param serverUri the base URI of the server
+     * @param cache the cache of the responses, or null to fetch every time
+     */
+    public WebEventProvider(URI serverUri, WebResponseCache cache) {
+        this(serverUri, cache, WebRequestPolicy.DEFAULT, new WebCircuitBreaker(null,
+                WebCircuitBreaker.DEFAULT_FAILURE_THRESHOLD, WebCircuitBreaker.DEFAULT_COOLDOWN));
+    }
+
+    /**
+     * Constructs a WebEventProvider with the given server URI, response cache,
+     * request policy and circuit breaker.
+     * The URI is resolved with the endpoint "api/v1/events".
+     *
+     * @param serverUri the base URI of the server
+     * @param cache the cache of the responses, or null to fetch every time
+     * @param policy the timeouts and retries of the requests
+     * @param circuitBreaker the circuit breaker of the server
+     */
+    public WebEventProvider(URI serverUri, WebResponseCache cache, WebRequestPolicy policy,
+                            WebCircuitBreaker circuitBreaker) {
         // Resolve the endpoint relative to the provided serverUri.
         this.baseUri = serverUri.resolve("api/v1/events");
-        this.httpClient = HttpClient.newHttpClient();
+        this.cache = cache;
+        this.policy = policy;
+        this.circuitBreaker = circuitBreaker;
+        // The threads are daemons, so that they don't keep the JVM running after the command.
+        this.executor = Executors.newFixedThreadPool(THREAD_COUNT,
+                Thread.ofPlatform().name("web-events-", 0).daemon().factory());
+        // The client keeps its default executor: parsing blocks while reading the body,
+        // and if the client delivered the body on the same threads, they would wait
+        // for each other as soon as every thread was parsing a response.
+        this.httpClient = HttpClient.newBuilder()
+                .connectTimeout(policy.connectTimeout())
+                .build();
         // Create and configure ObjectMapper, registering the custom EventDeserializer.
-        this.objectMapper = new ObjectMapper();
+        ObjectMapper objectMapper = new ObjectMapper();
         SimpleModule module = new SimpleModule("EventDeserializer");
         module.addDeserializer(Event.class, new EventDeserializer());
-        this.objectMapper.registerModule(module);
+        objectMapper.registerModule(module);
+        // The reader is immutable and thread-safe, and it keeps the deserializer it has looked up.
+        this.eventReader = objectMapper.readerFor(Event.class);
     }
 
     /**
@@ -57,15 +149,30 @@ public class WebEventProvider implements EventProvider {
     }
 
     /**
-     * Fetches events for the specified MonthDay.
-     * The MonthDay is converted to a string in "MM-dd" format (by removing any leading "--")
-     * and passed as a query parameter "date" to the endpoint.
+     * Fetches events for the specified MonthDay, waiting for the response.
+     * The fetch is given up after the deadline of the request policy,
+     * so this doesn't wait much longer than that.
      *
      * @param monthDay the month and day to match
      * @return list of matching events
+     * @see #getEventsOfDateAsync(MonthDay)
      */
     @Override
     public List<Event> getEventsOfDate(MonthDay monthDay) {
+        return getEventsOfDateAsync(monthDay).join();
+    }
+
+    /**
+     * Starts fetching events for the specified MonthDay and returns at once.
+     * The MonthDay is converted to a string in "MM-dd" format (by removing any leading "--")
+     * and passed as a query parameter "date" to the endpoint.
+     * If the request fails, the error is reported and the future is completed with an empty list.
+     *
+     * @param monthDay the month and day to match
+     * @return future completed with the list of matching events
+     */
+    @Override
+    public CompletableFuture<List<Event>> getEventsOfDateAsync(MonthDay monthDay) {
         // Convert MonthDay to a string (expected format is "--MM-dd")
         String dateParam = monthDay.toString();
         if (dateParam.startsWith("--")) {
@@ -74,24 +181,275 @@ public class WebEventProvider implements EventProvider {
         // Construct the request URI with the query parameter "date"
         URI requestUri = URI.create(baseUri.toString() + "?date=" + dateParam);
 
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(requestUri)
-                    .GET()
-                    .build();
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                String body = response.body();
-                // Deserialize JSON response into a list of Event objects
-                return objectMapper.readValue(body, new TypeReference<List<Event>>() {});
+        // The cache is read by a thread of the provider, as reading a file may block too.
+        return CompletableFuture.supplyAsync(() -> loadCached(requestUri), executor)
+                .thenCompose(cached -> {
+                    List<Event> cachedEvents = cached != null ? decodeEvents(cached.body()) : null;
+                    if (cachedEvents == null) {
+                        return fetchEvents(requestUri, null, null);
+                    }
+                    if (cached.isFresh(System.currentTimeMillis())) {
+                        return CompletableFuture.completedFuture(cachedEvents);
+                    }
+                    return fetchEvents(requestUri, cached, cachedEvents);
+                })
+                .exceptionally(e -> {
+                    // sendAsync wraps the IOException of a failed request.
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error during HTTP request: " + cause.getMessage());
+                    // Fallback: return an empty list if errors occur.
+                    return new ArrayList<>();
+                });
+    }
+
+    /*
+       Sends the request, conditional if there is a cached response to revalidate. If the server
+       can't be reached, or the circuit breaker doesn't allow trying, the cached events are used.
+    */
+    private CompletableFuture<List<Event>> fetchEvents(URI requestUri, WebResponseCache.Entry cached,
+                                                       List<Event> cachedEvents) {
+        long now = System.currentTimeMillis();
+        if (!circuitBreaker.allowsRequest(now)) {
+            long openUntil = circuitBreaker.getOpenUntilMillis();
+            if (openUntil > now) {
+                System.err.printf("Web server unavailable, not trying again until %s%n",
+                        LocalTime.ofInstant(Instant.ofEpochMilli(openUntil),
+                                ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS));
             } else {
-                System.err.println("HTTP error: " + response.statusCode());
+                System.err.println("Web server unavailable, another request is trying it");
+            }
+            return CompletableFuture.completedFuture(cachedOrEmpty(cachedEvents));
+        }
+
+        HttpRequest.Builder builder = HttpRequest.newBuilder()
+                .uri(requestUri)
+                .timeout(policy.requestTimeout())
+                .GET();
+        if (cached != null && cached.etag() != null) {
+            builder.header("If-None-Match", cached.etag());
+        }
+        if (cached != null && cached.lastModified() != null) {
+            builder.header("If-Modified-Since", cached.lastModified());
+        }
+        AtomicBoolean expired = new AtomicBoolean();
+        return send(builder.build(), 0)
+                .thenApply(response -> expireBody(response, expired))
+                .thenApplyAsync(response -> handleResponse(requestUri, response, cached, cachedEvents, expired),
+                        executor)
+                .orTimeout(policy.deadline().toMillis(), TimeUnit.MILLISECONDS)
+                .exceptionally(e -> {
+                    if (e instanceof TimeoutException) {
+                        // Each attempt should have timed out by now, but something still hangs.
+                        circuitBreaker.recordFailure(System.currentTimeMillis());
+                        System.err.println("HTTP request timed out after " + policy.deadline().toMillis() + " ms");
+                        return cachedOrEmpty(cachedEvents);
+                    }
+                    // sendAsync wraps the IOException of a failed request.
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    System.err.println("Error during HTTP request: " + cause);
+                    return cachedOrEmpty(cachedEvents);
+                });
+    }
+
+    /*
+       Sends the request, and retries it after an I/O error or a 5xx response, with a random
+       delay that grows with each retry, as long as the policy and the circuit breaker allow.
+       Each failed attempt is recorded by the circuit breaker.
+    */
+    private CompletableFuture<HttpResponse<InputStream>> send(HttpRequest request, int retries) {
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .handleAsync((response, error) -> {
+                    if (error == null && response.statusCode() < 500) {
+                        circuitBreaker.recordSuccess();
+                        return CompletableFuture.completedFuture(response);
+                    }
+                    long now = System.currentTimeMillis();
+                    circuitBreaker.recordFailure(now);
+                    if (retries >= policy.maxRetries() || !circuitBreaker.allowsRequest(now)) {
+                        return error == null
+                                ? CompletableFuture.completedFuture(response)
+                                : CompletableFuture.<HttpResponse<InputStream>>failedFuture(error);
+                    }
+
+                    if (response != null) {
+                        closeQuietly(response.body());
+                    }
+                    long delay = policy.backoffMillis(retries + 1);
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    System.err.printf("HTTP request failed (%s), retrying in %d ms%n",
+                            cause != null ? cause : "HTTP error " + response.statusCode(), delay);
+                    return CompletableFuture.supplyAsync(() -> null,
+                                    CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor))
+                            .thenCompose(ignored -> send(request, retries + 1));
+                }, executor)
+                .thenCompose(Function.identity());
+    }
+
+    /*
+       The request timeout only lasts until the headers arrive, so the body gets as long again from
+       then on. If it isn't read by then, it is closed, which wakes a read that waits for a stalled
+       server with an IOException, and the flag tells the reader why.
+    */
+    private HttpResponse<InputStream> expireBody(HttpResponse<InputStream> response, AtomicBoolean expired) {
+        // The delayed task runs on the common pool, as the provider's threads may be the ones waiting.
+        CompletableFuture.runAsync(() -> {
+            expired.set(true);
+            closeQuietly(response.body());
+        }, CompletableFuture.delayedExecutor(policy.requestTimeout().toMillis(), TimeUnit.MILLISECONDS));
+        return response;
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // The response is discarded anyway.
+        }
+    }
+
+    // Gets the cached events, even if stale, for when the server can't give them.
+    private static List<Event> cachedOrEmpty(List<Event> cachedEvents) {
+        if (cachedEvents == null) {
+            return new ArrayList<>();
+        }
+        System.err.println("Using cached web events");
+        return cachedEvents;
+    }
+
+    /*
+       Gets the events of a response: the cached ones if the server says they haven't changed,
+       or else the deserialized body, which is then cached. Reports an HTTP error and returns
+       no events if the response is neither.
+    */
+    private List<Event> handleResponse(URI requestUri, HttpResponse<InputStream> response,
+                                       WebResponseCache.Entry cached, List<Event> cachedEvents,
+                                       AtomicBoolean expired) {
+        // Closing the body also releases the connection of a response that isn't read.
+        try (InputStream body = response.body()) {
+            return handleResponse(requestUri, response, body, cached, cachedEvents, expired);
+        } catch (IOException e) {
+            System.err.println("Error reading HTTP response: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private List<Event> handleResponse(URI requestUri, HttpResponse<InputStream> response, InputStream body,
+                                       WebResponseCache.Entry cached, List<Event> cachedEvents,
+                                       AtomicBoolean expired) {
+        long now = System.currentTimeMillis();
+        if (response.statusCode() == 304 && cached != null) {
+            try {
+                cache.refresh(requestUri, cached, response.headers(), now);
+            } catch (IOException e) {
+                System.err.println("Error writing web cache: " + e.getMessage());
             }
-        } catch (IOException | InterruptedException e) {
-            System.err.println("Error during HTTP request: " + e.getMessage());
+            return cachedEvents;
+        }
+        if (response.statusCode() != 200) {
+            System.err.println("HTTP error: " + response.statusCode());
+            // The server failed, but the events it gave before may still be right.
+            return response.statusCode() >= 500 ? cachedOrEmpty(cachedEvents) : new ArrayList<>();
+        }
+
+        List<Event> events = new ArrayList<>();
+        // Deserialize the JSON array of the response into events one at a time as it is received,
+        // without holding the whole body.
+        try (MappingIterator<Event> iterator = eventReader.readValues(body)) {
+            while (iterator.hasNextValue()) {
+                events.add(iterator.nextValue());
+            }
+        } catch (IOException e) {
+            if (expired.get()) {
+                // The server stalled while sending the body, which counts as a failed request.
+                circuitBreaker.recordFailure(System.currentTimeMillis());
+                System.err.println("HTTP response timed out after " + policy.requestTimeout().toMillis() + " ms");
+                return cachedOrEmpty(cachedEvents);
+            }
+            System.err.println("Error parsing events: " + e.getMessage());
+            return new ArrayList<>();
+        }
+        if (cache != null) {
+            try {
+                cache.store(requestUri, response.headers(), encodeEvents(events), now);
+            } catch (IOException e) {
+                System.err.println("Error writing web cache: " + e.getMessage());
+            }
+        }
+        return events;
+    }
+
+    // Gets the cached response of the URI, or null if there is none.
+    private WebResponseCache.Entry loadCached(URI requestUri) {
+        if (cache == null) {
+            return null;
+        }
+        try {
+            return cache.load(requestUri);
+        } catch (IOException e) {
+            System.err.println("Error reading web cache: " + e.getMessage());
+            return null;
         }
-        // Fallback: return an empty list if errors occur.
-        return new ArrayList<>();
+    }
+
+    /*
+       Encodes events for the cache as their date, description and category strings,
+       which EventFactory makes into events again much faster than parsing JSON.
+    */
+    private static byte[] encodeEvents(List<Event> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(events.size());
+            for (Event event : events) {
+                // Singular events have full dates and annual events "--MM-DD".
+                out.writeUTF(event instanceof SingularEvent singular
+                        ? singular.getDate().toString() : event.getMonthDay().toString());
+                out.writeUTF(event.getDescription());
+                out.writeUTF(event.getCategory().toString());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    // Decodes the events encoded for the cache, or returns null if they can't be decoded.
+    private static List<Event> decodeEvents(byte[] body) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int count = in.readInt();
+            List<Event> events = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                events.add(EventFactory.makeEvent(in.readUTF(), in.readUTF(), in.readUTF()));
+            }
+            return events;
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error reading web cache: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Starts fetching the events of the filter's MonthDay, or of today's
+     * MonthDay if the filter isn't a date filter, and returns at once.
+     * The fetched events are filtered with the filter.
+     *
+     * @param filter the filter
+     * @return future completed with the list of matching events
+     */
+    @Override
+    public CompletableFuture<List<Event>> getEventsAsync(EventFilter filter) {
+        MonthDay monthDay = filter instanceof DateFilter dateFilter ? dateFilter.getMonthDay() : MonthDay.now();
+        return getEventsOfDateAsync(monthDay)
+                .thenApply(events -> events.stream().filter(filter::accepts).toList());
+    }
+
+    /**
+     * Gets the events accepted by the filter, waiting for the response.
+     *
+     * @param filter the filter
+     * @return list of matching events
+     */
+    @Override
+    public List<Event> getEvents(EventFilter filter) {
+        return getEventsAsync(filter).join();
     }
 
     /**
@@ -108,13 +466,23 @@ public class WebEventProvider implements EventProvider {
         List<Event> events = getEventsOfDate(today);
         List<Event> filtered = new ArrayList<>();
         for (Event event : events) {
-            if (event.getCategory().equals(category)) {
+            if (category.matches(event.getCategory())) {
                 filtered.add(event);
             }
         }
         return filtered;
     }
 
+    /**
+     * The events are fetched from a remote server.
+     *
+     * @return true
+     */
+    @Override
+    public boolean isRemote() {
+        return true;
+    }
+
     /**
      * Returns the identifier for this event provider.
      *
@@ -0,0 +1,103 @@
+package tamk.tehtava.providers.web;
+
+import java.time.Duration;
+import java.util.Properties;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The timeouts and retries of the requests of WebEventProvider.
+ * A request that fails with an I/O error, such as a timeout, or gets
+ * a 5xx response is retried after a delay that grows exponentially with
+ * each attempt, up to a maximum. The delay is random between zero and
+ * that ("full jitter"), so that clients that failed at the same time
+ * don't all retry at the same time.
+ *
+ * @param connectTimeout the longest time to wait for a connection
+ * @param requestTimeout the longest time to wait for the response headers, and then for the body
+ * @param maxRetries the number of times a failed request is retried
+ * @param initialBackoff the maximum delay before the first retry
+ * @param maxBackoff the maximum delay before any retry
+ */
+public record WebRequestPolicy(Duration connectTimeout, Duration requestTimeout, int maxRetries,
+                               Duration initialBackoff, Duration maxBackoff) {
+    /** Waits 5 s for a connection and 10 s for a response, and retries twice. */
+    public static final WebRequestPolicy DEFAULT = new WebRequestPolicy(
+            Duration.ofSeconds(5), Duration.ofSeconds(10), 2, Duration.ofMillis(250), Duration.ofSeconds(4));
+
+    /**
+     * Constructs a policy, checking its values.
+     */
+    public WebRequestPolicy {
+        if (connectTimeout.isNegative() || connectTimeout.isZero()
+                || requestTimeout.isNegative() || requestTimeout.isZero()) {
+            throw new IllegalArgumentException("Timeouts must be positive");
+        }
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("Number of retries must not be negative: " + maxRetries);
+        }
+    }
+
+    /**
+     * Gets the longest time that fetching a response may take with all
+     * of its attempts: each one may wait for the connection, the headers
+     * and the body, and the retries may wait for their delays.
+     *
+     * @return the longest time of a fetch
+     */
+    public Duration deadline() {
+        Duration attempt = this.connectTimeout.plus(this.requestTimeout.multipliedBy(2));
+        return attempt.multipliedBy(this.maxRetries + 1L).plus(this.maxBackoff.multipliedBy(this.maxRetries));
+    }
+
+    /**
+     * Gets a random delay before a retry.
+     *
+     * @param retry the number of the retry, starting from 1
+     * @return the delay in milliseconds
+     */
+    public long backoffMillis(int retry) {
+        // The ceiling doubles with each retry, and stops at the maximum so that it can't overflow.
+        long ceiling = this.initialBackoff.toMillis();
+        for (int i = 1; i < retry && ceiling < this.maxBackoff.toMillis(); i++) {
+            ceiling *= 2;
+        }
+        ceiling = Math.min(ceiling, this.maxBackoff.toMillis());
+        return ceiling > 0 ? ThreadLocalRandom.current().nextLong(ceiling + 1) : 0;
+    }
+
+    /**
+     * Gets a policy with the values given by the properties "today.web.connect-timeout"
+     * and "today.web.request-timeout", in milliseconds, and "today.web.retries".
+     * Missing and invalid values are taken from the defaults; invalid ones are reported.
+     *
+     * @param properties the properties, such as the system properties
+     * @param defaults the policy of the values not given
+     * @return the policy
+     */
+    public static WebRequestPolicy fromProperties(Properties properties, WebRequestPolicy defaults) {
+        Duration connectTimeout = Duration.ofMillis(readLong(properties, "today.web.connect-timeout",
+                defaults.connectTimeout().toMillis(), 1));
+        Duration requestTimeout = Duration.ofMillis(readLong(properties, "today.web.request-timeout",
+                defaults.requestTimeout().toMillis(), 1));
+        int maxRetries = (int) readLong(properties, "today.web.retries", defaults.maxRetries(), 0);
+        return new WebRequestPolicy(connectTimeout, requestTimeout, maxRetries,
+                defaults.initialBackoff(), defaults.maxBackoff());
+    }
+
+    private static long readLong(Properties properties, String name, long defaultValue, long minimum) {
+        String value = properties.getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            long result = Long.parseLong(value.trim());
+            if (result >= minimum && result <= Integer.MAX_VALUE) {
+                return result;
+            }
+        } catch (NumberFormatException nfe) {
+            // Reported below.
+        }
+        System.err.println("Invalid value of " + name + " '" + value + "', using " + defaultValue);
+        return defaultValue;
+    }
+}
@@ -0,0 +1,337 @@
+package tamk.tehtava.providers.web;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.net.URI;
+import java.net.http.HttpHeaders;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Cache of HTTP responses on disk, one file per request URI, named by the
+ * SHA-256 hash of the URI. An entry holds the body of the response with
+ * its validators, the ETag and Last-Modified headers, and the time until
+ * which it is fresh according to the Cache-Control, Expires and
+ * Last-Modified headers (https://www.rfc-editor.org/rfc/rfc9111).
+ *
+ * A fresh entry is used without asking the server. A stale one is
+ * revalidated with a conditional request, and if the server answers
+ * 304 Not Modified, it is used and refreshed with the new headers.
+ *
+ * The total size of the entries is kept under a limit by deleting the
+ * least recently used ones. The modification time of an entry file is
+ * set whenever it is used, so it is the time of the last use.
+ *
+ * An entry file contains, in order: magic, version, the URI, the time
+ * it was stored, the time until which it is fresh, the ETag and
+ * Last-Modified headers (empty if missing) and the body.
+ */
+public class WebResponseCache {
+    /**
+     * A cached response.
+     *
+     * @param etag the ETag header, or null
+     * @param lastModified the Last-Modified header, or null
+     * @param storedMillis the time the response was received or revalidated, in milliseconds
+     * @param freshUntilMillis the time until which the response is fresh, in milliseconds
+     * @param body the body of the response
+     */
+    public record Entry(String etag, String lastModified, long storedMillis, long freshUntilMillis, byte[] body) {
+        /**
+         * Tests if the entry can be used without revalidating it.
+         *
+         * @param nowMillis the current time in milliseconds
+         * @return true if the entry is fresh
+         */
+        public boolean isFresh(long nowMillis) {
+            return nowMillis < this.freshUntilMillis;
+        }
+
+        /**
+         * Tests if the entry can be revalidated with a conditional request.
+         *
+         * @return true if the entry has a validator
+         */
+        public boolean hasValidator() {
+            return this.etag != null || this.lastModified != null;
+        }
+    }
+
+    /** The default limit of the total size of the cache in bytes. */
+    public static final long DEFAULT_MAX_SIZE = 16L * 1024 * 1024;
+
+    private static final int MAGIC = 0x54445957;  // "TDYW"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".cache";
+
+    // The longest time a response is fresh by a guess from its Last-Modified header.
+    private static final long MAX_HEURISTIC_MILLIS = 24L * 60 * 60 * 1000;
+
+    private final Path directory;
+    private final long maxSize;
+
+    /**
+     * Constructs a cache in the specified directory,
+     * which is created when the first entry is stored.
+     *
+     * @param directory the directory of the entry files
+     * @param maxSize the limit of the total size of the entries in bytes
+     */
+    public WebResponseCache(Path directory, long maxSize) {
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Gets the cached response of the URI and marks it as used.
+     * A damaged entry is deleted, and treated as if there were none.
+     *
+     * @param uri the request URI
+     * @return the entry, or null if the URI has no usable entry
+     * @throws IOException if reading the entry fails
+     */
+    public Entry load(URI uri) throws IOException {
+        Path path = this.pathOf(uri);
+        Entry entry;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            long fileSize = Files.size(path);
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                this.discard(path);
+                return null;
+            }
+            // Two URIs with the same hash would share a file.
+            if (!in.readUTF().equals(uri.toString())) {
+                return null;
+            }
+            long storedMillis = in.readLong();
+            long freshUntilMillis = in.readLong();
+            String etag = emptyToNull(in.readUTF());
+            String lastModified = emptyToNull(in.readUTF());
+            // A damaged length could be negative or huge, the body can't be longer than the file.
+            int length = in.readInt();
+            if (length < 0 || length > fileSize) {
+                this.discard(path);
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            entry = new Entry(etag, lastModified, storedMillis, freshUntilMillis, body);
+        } catch (NoSuchFileException | EOFException e) {
+            // Not cached, or deleted or truncated while being read.
+            return null;
+        } catch (UTFDataFormatException e) {
+            this.discard(path);
+            return null;
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException nsfe) {
+            // Evicted by another process meanwhile.
+        }
+        return entry;
+    }
+
+    // Deletes a damaged entry, so that it isn't read again on every run.
+    private void discard(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ioe) {
+            System.err.println("Unable to delete damaged web cache entry '" + path + "': " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Stores a response of the URI, unless its Cache-Control header forbids it.
+     * The entry is written to a temporary file first and then moved in place,
+     * so a reader never sees a partially written entry. Least recently used
+     * entries are then deleted until the cache is within its size limit.
+     *
+     * @param uri the request URI
+     * @param headers the headers of the response
+     * @param body the body to store
+     * @param nowMillis the time the response was received, in milliseconds
+     * @return the stored entry, or null if the response can't be stored
+     * @throws IOException if writing the entry fails
+     */
+    public Entry store(URI uri, HttpHeaders headers, byte[] body, long nowMillis) throws IOException {
+        if (hasDirective(headers, "no-store")) {
+            return null;
+        }
+        Entry entry = new Entry(headers.firstValue("ETag").orElse(null),
+                headers.firstValue("Last-Modified").orElse(null),
+                nowMillis, nowMillis + freshnessMillis(headers, nowMillis), body);
+        if (!entry.hasValidator() && !entry.isFresh(nowMillis)) {
+            return null;  // it could never be used
+        }
+        this.write(uri, entry);
+        this.evict();
+        return entry;
+    }
+
+    /**
+     * Refreshes an entry that the server has revalidated with a 304 response,
+     * whose headers replace those of the entry. The body is kept.
+     *
+     * @param uri the request URI
+     * @param entry the revalidated entry
+     * @param headers the headers of the 304 response
+     * @param nowMillis the time the response was received, in milliseconds
+     * @return the refreshed entry
+     * @throws IOException if writing the entry fails
+     */
+    public Entry refresh(URI uri, Entry entry, HttpHeaders headers, long nowMillis) throws IOException {
+        Entry refreshed = new Entry(headers.firstValue("ETag").orElse(entry.etag()),
+                headers.firstValue("Last-Modified").orElse(entry.lastModified()),
+                nowMillis, nowMillis + freshnessMillis(headers, nowMillis), entry.body());
+        this.write(uri, refreshed);
+        return refreshed;
+    }
+
+    private void write(URI uri, Entry entry) throws IOException {
+        Files.createDirectories(this.directory);
+        Path temporary = Files.createTempFile(this.directory, "response", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeUTF(uri.toString());
+                out.writeLong(entry.storedMillis());
+                out.writeLong(entry.freshUntilMillis());
+                out.writeUTF(entry.etag() == null ? "" : entry.etag());
+                out.writeUTF(entry.lastModified() == null ? "" : entry.lastModified());
+                out.writeInt(entry.body().length);
+                out.write(entry.body());
+            }
+            Files.move(temporary, this.pathOf(uri),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // Deletes the least recently used entries until the total size is within the limit.
+    private void evict() throws IOException {
+        record File(Path path, long size, FileTime used) {
+        }
+
+        List<File> files = new ArrayList<>();
+        long total = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(this.directory, "*" + SUFFIX)) {
+            for (Path path : stream) {
+                try {
+                    File file = new File(path, Files.size(path), Files.getLastModifiedTime(path));
+                    files.add(file);
+                    total += file.size();
+                } catch (NoSuchFileException nsfe) {
+                    // Deleted by another process meanwhile.
+                }
+            }
+        }
+        if (total <= this.maxSize) {
+            return;
+        }
+
+        files.sort(Comparator.comparing(File::used));
+        for (File file : files) {
+            if (total <= this.maxSize) {
+                break;
+            }
+            Files.deleteIfExists(file.path());
+            total -= file.size();
+        }
+    }
+
+    private Path pathOf(URI uri) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256")
+                    .digest(uri.toString().getBytes(StandardCharsets.UTF_8));
+            return this.directory.resolve(HexFormat.of().formatHex(hash) + SUFFIX);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /*
+       Gets the time a response is fresh after it was received: the max-age of its
+       Cache-Control header, or else the time from its Date to its Expires header.
+       Without either, a response that hasn't changed for a long time probably won't
+       change soon, so it is fresh for a tenth of the time since its Last-Modified
+       header, but for at most a day. A response with no-cache is never fresh.
+    */
+    static long freshnessMillis(HttpHeaders headers, long nowMillis) {
+        if (hasDirective(headers, "no-cache")) {
+            return 0;
+        }
+        for (String directive : directives(headers)) {
+            if (directive.startsWith("max-age=")) {
+                try {
+                    return Math.max(0, Long.parseLong(directive.substring("max-age=".length()).trim()) * 1000);
+                } catch (NumberFormatException nfe) {
+                    return 0;
+                }
+            }
+        }
+
+        Optional<Long> expires = parseDate(headers.firstValue("Expires"));
+        if (expires.isPresent()) {
+            long date = parseDate(headers.firstValue("Date")).orElse(nowMillis);
+            return Math.max(0, expires.get() - date);
+        }
+
+        Optional<Long> lastModified = parseDate(headers.firstValue("Last-Modified"));
+        if (lastModified.isPresent()) {
+            return Math.min(MAX_HEURISTIC_MILLIS, Math.max(0, (nowMillis - lastModified.get()) / 10));
+        }
+        return 0;
+    }
+
+    private static boolean hasDirective(HttpHeaders headers, String name) {
+        return directives(headers).contains(name);
+    }
+
+    // Gets the directives of the Cache-Control headers in lower case.
+    private static List<String> directives(HttpHeaders headers) {
+        List<String> result = new ArrayList<>();
+        for (String value : headers.allValues("Cache-Control")) {
+            for (String directive : value.split(",")) {
+                result.add(directive.trim().toLowerCase());
+            }
+        }
+        return result;
+    }
+
+    private static Optional<Long> parseDate(Optional<String> value) {
+        try {
+            return value.map(date -> ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME)
+                    .toInstant().toEpochMilli());
+        } catch (DateTimeParseException dtpe) {
+            return Optional.empty();
+        }
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+}
@@ -0,0 +1,256 @@
+package tamk.tehtava.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import com.opencsv.exceptions.CsvValidationException;
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.Event;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Loads many events from a stream of CSV or NDJSON records and passes
+ * them on in batches. The records are parsed and validated with
+ * EventFactory on a separate thread, and handed over to the writer
+ * through a bounded queue, so that parsing and writing overlap
+ * without the whole input being kept in memory.
+ *
+ * CSV records have the fields date, description and category, like
+ * the CSV event files. NDJSON records are JSON objects, one per line,
+ * with the fields "date", "description" and "category", like the events
+ * of the web provider. The format is detected from the first character.
+ * Dates are full dates for singular events, or month-days for annual
+ * events, with or without the leading "--".
+ */
+public class BulkEventLoader {
+    /**
+     * Writes a batch of events somewhere.
+     */
+    @FunctionalInterface
+    public interface BatchWriter {
+        /**
+         * Writes a batch of events.
+         *
+         * @param batch the events
+         * @return the number of events written
+         * @throws IOException if writing fails
+         */
+        int write(List<Event> batch) throws IOException;
+    }
+
+    /**
+     * The outcome of a load.
+     *
+     * @param added the number of events written
+     * @param rejected the number of records that were invalid or not written
+     * @param nanos the time the load took, in nanoseconds
+     */
+    public record Result(long added, long rejected, long nanos) {
+        /**
+         * Gets the throughput of the load.
+         *
+         * @return events written per second
+         */
+        public double eventsPerSecond() {
+            return this.nanos == 0 ? 0 : this.added * 1e9 / this.nanos;
+        }
+    }
+
+    /** The number of events in a batch, by default. */
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    // Batches parsed ahead of the writer at most.
+    private static final int QUEUED_BATCHES = 4;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    // Marks the end of the input in the queue.
+    private static final List<Event> END = new ArrayList<>();
+
+    private final int batchSize;
+
+    /**
+     * Constructs a loader with the default batch size.
+     */
+    public BulkEventLoader() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructs a loader with the specified batch size.
+     *
+     * @param batchSize the number of events in a batch
+     */
+    public BulkEventLoader(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Loads the events of the input and writes them in batches.
+     * Invalid records are reported to the standard error stream and skipped.
+     *
+     * @param input the CSV or NDJSON records
+     * @param writer writes each batch, on the calling thread
+     * @return the outcome of the load
+     * @throws IOException if reading the input or writing a batch fails
+     */
+    public Result load(InputStream input, BatchWriter writer) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<List<Event>> batches = new ArrayBlockingQueue<>(QUEUED_BATCHES);
+        long[] rejected = new long[1];
+        Exception[] failure = new Exception[1];
+
+        Thread parser = new Thread(() -> {
+            try {
+                this.parse(input, batches, rejected);
+            } catch (IOException | CsvValidationException | RuntimeException e) {
+                failure[0] = e;
+            } catch (InterruptedException ie) {
+                // The writer failed and stopped taking batches.
+                return;
+            }
+            try {
+                batches.put(END);
+            } catch (InterruptedException ie) {
+                // The writer failed.
+            }
+        }, "bulk-event-parser");
+        parser.setDaemon(true);
+        parser.start();
+
+        long added = 0;
+        long notWritten = 0;
+        try {
+            List<Event> batch;
+            while ((batch = batches.take()) != END) {
+                int written = writer.write(batch);
+                added += written;
+                notWritten += batch.size() - written;
+            }
+            // The thread has ended, so its results are visible.
+            parser.join();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while loading events");
+        } finally {
+            parser.interrupt();
+        }
+
+        if (failure[0] instanceof IOException ioe) {
+            throw ioe;
+        } else if (failure[0] instanceof CsvValidationException cve) {
+            throw new IOException(cve);
+        } else if (failure[0] instanceof RuntimeException re) {
+            throw re;
+        }
+        return new Result(added, rejected[0] + notWritten, System.nanoTime() - start);
+    }
+
+    private void parse(InputStream input, BlockingQueue<List<Event>> batches, long[] rejected)
+            throws IOException, CsvValidationException, InterruptedException {
+        BufferedInputStream in = new BufferedInputStream(input, BUFFER_SIZE);
+        List<Event> batch = new ArrayList<>(this.batchSize);
+        long recordNumber = 0;
+
+        if (startsWithJsonObject(in)) {
+            MappingIterator<JsonNode> records = new ObjectMapper().readerFor(JsonNode.class).readValues(in);
+            while (records.hasNextValue()) {
+                JsonNode record = records.nextValue();
+                recordNumber++;
+                Event event = makeEvent(recordNumber, text(record, "date"),
+                        text(record, "description"), text(record, "category"));
+                batch = this.add(batch, event, batches, rejected);
+            }
+        } else {
+            try (CSVReader reader = new CSVReaderBuilder(new BufferedReader(
+                    new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE)).build()) {
+                String[] line;
+                while ((line = reader.readNext()) != null) {
+                    if (line.length == 1 && line[0].isBlank()) {
+                        continue;  // empty line
+                    }
+                    recordNumber++;
+                    Event event = makeEvent(recordNumber, field(line, 0), field(line, 1), field(line, 2));
+                    batch = this.add(batch, event, batches, rejected);
+                }
+            }
+        }
+
+        if (!batch.isEmpty()) {
+            batches.put(batch);
+        }
+    }
+
+    /* Adds a valid event to the batch, queueing the batch when it is full. */
+    private List<Event> add(List<Event> batch, Event event, BlockingQueue<List<Event>> batches,
+                            long[] rejected) throws InterruptedException {
+        if (event == null) {
+            rejected[0]++;
+            return batch;
+        }
+        batch.add(event);
+        if (batch.size() < this.batchSize) {
+            return batch;
+        }
+        batches.put(batch);
+        return new ArrayList<>(this.batchSize);
+    }
+
+    // Makes the event of a record, or reports the record and returns null if it is invalid.
+    private static Event makeEvent(long recordNumber, String date, String description, String category) {
+        if (date == null || description == null || category == null) {
+            System.err.printf("Record %d: expected date, description and category%n", recordNumber);
+            return null;
+        }
+        date = date.strip();
+        // Accept month-days without the leading "--", like the addevent command does.
+        if (date.length() == 5 && date.charAt(2) == '-') {
+            date = "--" + date;
+        }
+        try {
+            return EventFactory.makeEvent(date, description, category.strip());
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            System.err.printf("Record %d: %s%n", recordNumber, e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static String field(String[] line, int index) {
+        return index < line.length ? line[index] : null;
+    }
+
+    private static String text(JsonNode record, String field) {
+        JsonNode value = record.get(field);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    // Tests if the first non-blank character of the input opens a JSON object.
+    private static boolean startsWithJsonObject(BufferedInputStream in) throws IOException {
+        in.mark(BUFFER_SIZE);
+        try {
+            int c;
+            do {
+                c = in.read();
+            } while (c == ' ' || c == '\t' || c == '\r' || c == '\n');
+            return c == '{';
+        } finally {
+            in.reset();
+        }
+    }
+}
@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.SQLException;
 
 public class DatabaseInitializer {
     public static void ensureDatabaseExists() {
@@ -23,4 +24,22 @@ public class DatabaseInitializer {
             }
         }
     }
+
+    /**
+     * Brings the schema of the database up to date with DatabaseMigrator,
+     * so that databases created by earlier versions of the application
+     * get the new columns and indexes too.
+     */
+    public static void migrateDatabase() {
+        String homeDirectory = System.getProperty("user.home");
+        Path dbPath = Paths.get(homeDirectory, ".today", "events.sqlite3");
+        if (!Files.exists(dbPath)) {
+            return;
+        }
+        try {
+            DatabaseMigrator.migrate("jdbc:sqlite:" + dbPath);
+        } catch (SQLException | IOException e) {
+            System.err.println("Error migrating database: " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,164 @@
+package tamk.tehtava.util;
+
+import org.sqlite.SQLiteConfig;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Brings the schema of an events database up to date by applying migration
+ * scripts from the resources. The version of the schema is kept in
+ * <code>PRAGMA user_version</code>: migration N brings the database from
+ * version N-1 to version N, and each migration is applied in a transaction
+ * together with the version change, so it is applied completely or not at all.
+ * create_tables.sql creates the latest schema, with the latest version.
+ *
+ * A migration script is a sequence of SQL statements ending with ';'.
+ * A derived column is best added as a virtual generated column, like
+ * month_day, which needs no backfill of the existing rows.
+ */
+public class DatabaseMigrator {
+    // The migration scripts in order, script i brings the database to version i + 1.
+    private static final String[] MIGRATIONS = {
+        "/migrations/001_month_day_index.sql",
+        "/migrations/002_event_fts.sql",
+    };
+
+    /**
+     * Applies the migrations that the database doesn't have yet.
+     *
+     * @param url the JDBC URL of the database
+     * @return the number of migrations applied
+     * @throws SQLException if a migration fails, in which case it is rolled back
+     * @throws IOException if reading a migration script fails
+     */
+    public static int migrate(String url) throws SQLException, IOException {
+        // Take the write lock when a transaction begins, so that two processes
+        // starting at the same time don't both apply the same migration.
+        SQLiteConfig config = new SQLiteConfig();
+        config.setTransactionMode(SQLiteConfig.TransactionMode.IMMEDIATE);
+
+        int applied = 0;
+        try (Connection connection = DriverManager.getConnection(url, config.toProperties())) {
+            int version = getVersion(connection);
+            if (version > MIGRATIONS.length) {
+                System.err.printf("Database version %d is newer than this application (%d)%n",
+                        version, MIGRATIONS.length);
+                return 0;
+            }
+            while (version < MIGRATIONS.length) {
+                if (apply(connection, version + 1)) {
+                    applied++;
+                }
+                version = getVersion(connection);
+            }
+        }
+        return applied;
+    }
+
+    /*
+       Applies the migration to the specified version, unless another
+       process has applied it meanwhile.
+    */
+    private static boolean apply(Connection connection, int version) throws SQLException, IOException {
+        String script = MIGRATIONS[version - 1];
+        List<String> statements = parse(readResource(script));
+
+        connection.setAutoCommit(false);
+        try {
+            // This reads the version inside the transaction, so it can't change any more.
+            if (getVersion(connection) >= version) {
+                connection.rollback();
+                return false;
+            }
+            for (String sql : statements) {
+                try (var s = connection.createStatement()) {
+                    s.executeUpdate(sql);
+                }
+            }
+            try (var s = connection.createStatement()) {
+                s.executeUpdate("PRAGMA user_version = " + version);
+            }
+            connection.commit();
+            System.out.printf("Migrated database to version %d (%s)%n", version, script);
+            return true;
+        } catch (SQLException e) {
+            connection.rollback();
+            throw new SQLException("Migration " + script + " failed: " + e.getMessage(), e);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static int getVersion(Connection connection) throws SQLException {
+        try (var s = connection.createStatement();
+             var rs = s.executeQuery("PRAGMA user_version")) {
+            return rs.next() ? rs.getInt(1) : 0;
+        }
+    }
+
+    /**
+     * Runs the statements of an SQL script from the resources, such as
+     * create_tables.sql.
+     *
+     * @param connection the connection to the database
+     * @param resourceName the name of the script, such as "/create_tables.sql"
+     * @throws SQLException if a statement fails
+     * @throws IOException if reading the script fails
+     */
+    public static void executeScript(Connection connection, String resourceName)
+            throws SQLException, IOException {
+        for (String sql : parse(readResource(resourceName))) {
+            try (var s = connection.createStatement()) {
+                s.executeUpdate(sql);
+            }
+        }
+    }
+
+    /*
+       Splits a script into statements. A statement ends with a line
+       ending with ';', except that a trigger ends with "END;", as
+       the statements of its body end with ';' too.
+    */
+    private static List<String> parse(String script) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder sql = new StringBuilder();
+        boolean inTrigger = false;
+
+        for (String line : script.split("\r?\n")) {
+            String trimmed = line.strip();
+            if (sql.isEmpty()) {
+                if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                    continue;
+                }
+                inTrigger = trimmed.toUpperCase().matches("CREATE\\s+(TEMP\\s+|TEMPORARY\\s+)?TRIGGER\\b.*");
+            }
+            sql.append(line).append('\n');
+
+            boolean end = inTrigger ? trimmed.equalsIgnoreCase("END;") : trimmed.endsWith(";");
+            if (end) {
+                statements.add(sql.toString().strip());
+                sql.setLength(0);
+            }
+        }
+        if (!sql.toString().isBlank()) {
+            statements.add(sql.toString().strip());
+        }
+        return statements;
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = DatabaseMigrator.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("Resource not found: " + name);
+            }
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package tamk.tehtava.util;
+
+import java.time.Month;
+import java.time.MonthDay;
+
+/**
+ * Maps month-days to dense ordinals from 0 (January 1st) to 365 (December 31st).
+ * February 29th is included, so every month-day has its own ordinal.
+ */
+public final class MonthDayOrdinal {
+    /** The number of distinct month-days, including the leap day. */
+    public static final int COUNT = 366;
+
+    // Ordinal of the first day of each month, in a leap year.
+    private static final int[] MONTH_STARTS = new int[13];
+
+    // Shared instances, so that callers don't need to allocate new ones.
+    private static final MonthDay[] MONTH_DAYS = new MonthDay[COUNT];
+
+    static {
+        for (Month month : Month.values()) {
+            int start = MONTH_STARTS[month.getValue() - 1];
+            MONTH_STARTS[month.getValue()] = start + month.maxLength();
+            for (int day = 1; day <= month.maxLength(); day++) {
+                MONTH_DAYS[start + day - 1] = MonthDay.of(month, day);
+            }
+        }
+    }
+
+    private MonthDayOrdinal() {
+    }
+
+    /**
+     * Gets the ordinal of the specified month-day.
+     *
+     * @param monthDay the month-day
+     * @return ordinal between 0 and 365
+     */
+    public static int of(MonthDay monthDay) {
+        return MONTH_STARTS[monthDay.getMonthValue() - 1] + monthDay.getDayOfMonth() - 1;
+    }
+
+    /**
+     * Gets the ordinal of the specified month and day of month.
+     *
+     * @param month the month, from 1 to 12
+     * @param day the day of month, from 1 to 31
+     * @return ordinal between 0 and 365, or -1 if there is no such month-day
+     */
+    public static int of(int month, int day) {
+        if (month < 1 || month > 12 || day < 1
+                || day > MONTH_STARTS[month] - MONTH_STARTS[month - 1]) {
+            return -1;
+        }
+        return MONTH_STARTS[month - 1] + day - 1;
+    }
+
+    /**
+     * Gets the month-day with the specified ordinal.
+     *
+     * @param ordinal ordinal between 0 and 365
+     * @return the shared month-day instance
+     */
+    public static MonthDay toMonthDay(int ordinal) {
+        return MONTH_DAYS[ordinal];
+    }
+}
@@ -0,0 +1,140 @@
+package tamk.tehtava.util;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompresses a gzip stream on a background thread, so that the
+ * decompression overlaps with whatever the reader of this stream does
+ * with the data, such as parsing it. The decompressed data is handed
+ * over in large blocks through a bounded queue, which keeps the memory
+ * use constant however large the stream is.
+ */
+public class PipelinedGzipInputStream extends InputStream {
+    private static final int BLOCK_SIZE = 1 << 20;
+    private static final int QUEUED_BLOCKS = 4;
+    private static final int INPUT_BUFFER_SIZE = 1 << 16;
+
+    // Marks the end of the data in the queue.
+    private static final byte[] END = new byte[0];
+
+    private final BlockingQueue<byte[]> blocks;
+    private final Thread decompressor;
+
+    // Set by the decompressor before it queues END, if it failed.
+    private volatile IOException failure;
+
+    private byte[] block;
+    private int position;
+    private int limit;
+    private boolean ended;
+
+    /**
+     * Starts decompressing the specified compressed stream.
+     * The stream is closed when decompression ends or this stream is closed.
+     *
+     * @param compressed the gzip-compressed input
+     * @param name name of the decompressing thread
+     */
+    public PipelinedGzipInputStream(InputStream compressed, String name) {
+        this.blocks = new ArrayBlockingQueue<>(QUEUED_BLOCKS);
+        this.decompressor = new Thread(() -> this.decompress(compressed), name);
+        this.decompressor.setDaemon(true);
+        this.decompressor.start();
+    }
+
+    private void decompress(InputStream compressed) {
+        try (InputStream in = new GZIPInputStream(
+                new BufferedInputStream(compressed, INPUT_BUFFER_SIZE), INPUT_BUFFER_SIZE)) {
+            while (true) {
+                byte[] buffer = new byte[BLOCK_SIZE];
+                int filled = in.readNBytes(buffer, 0, BLOCK_SIZE);
+                if (filled > 0) {
+                    this.blocks.put(filled == BLOCK_SIZE ? buffer : Arrays.copyOf(buffer, filled));
+                }
+                if (filled < BLOCK_SIZE) {
+                    break;
+                }
+            }
+        } catch (InterruptedException ie) {
+            // Closed by the reader, nobody is waiting for the end.
+            return;
+        } catch (IOException ioe) {
+            this.failure = ioe;
+        }
+
+        try {
+            this.blocks.put(END);
+        } catch (InterruptedException ie) {
+            // Closed by the reader.
+        }
+    }
+
+    /* Makes sure that there is data in the current block, unless at the end. */
+    private boolean fill() throws IOException {
+        if (this.ended) {
+            return false;
+        }
+        while (this.block == null || this.position == this.limit) {
+            try {
+                this.block = this.blocks.take();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while decompressing");
+            }
+            this.position = 0;
+            this.limit = this.block.length;
+            if (this.block == END) {
+                this.ended = true;
+                if (this.failure != null) {
+                    throw this.failure;
+                }
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.fill()) {
+            return -1;
+        }
+        return this.block[this.position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.fill()) {
+            return -1;
+        }
+        int count = Math.min(length, this.limit - this.position);
+        System.arraycopy(this.block, this.position, buffer, offset, count);
+        this.position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return this.block == null ? 0 : this.limit - this.position;
+    }
+
+    /**
+     * Stops decompressing, if it hasn't ended yet, and closes the compressed stream.
+     */
+    @Override
+    public void close() {
+        this.ended = true;
+        this.decompressor.interrupt();
+        this.blocks.clear();
+    }
+}
@@ -12,13 +12,55 @@ CREATE TABLE IF NOT EXISTS event(
 
     category_id INTEGER NOT NULL,
 
+    -- The month and day of the event as MMDD, e.g. 324 for March 24th,
+    -- computed from both full dates and yearless "--MM-DD" dates.
+    -- See https://www.sqlite.org/gencol.html
+    month_day INTEGER GENERATED ALWAYS AS (
+        CAST(substr(event_date, -5, 2) AS INTEGER) * 100
+        + CAST(substr(event_date, -2) AS INTEGER)) VIRTUAL,
+
     -- See https://www.sqlite.org/foreignkeys.html
     FOREIGN KEY (category_id) REFERENCES category(category_id)
 );
 
+-- Finds the events of a day, optionally of some categories, without scanning the table.
+-- The index also has the other columns that the queries read, so it covers them
+-- and the table itself is not read at all.
+CREATE INDEX IF NOT EXISTS event_month_day_category
+    ON event(month_day, category_id, event_date, event_description);
+
+-- Full-text index of the event descriptions, for the search command.
+-- The descriptions are not stored twice: the index refers to the rows of the event
+-- table by event_id, and the triggers keep it up to date when events change.
+-- The prefix indexes make searches for the beginnings of words fast.
+-- See https://www.sqlite.org/fts5.html
+CREATE VIRTUAL TABLE IF NOT EXISTS event_fts USING fts5(
+    event_description,
+    content = 'event',
+    content_rowid = 'event_id',
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3');
+
+CREATE TRIGGER IF NOT EXISTS event_fts_insert AFTER INSERT ON event BEGIN
+    INSERT INTO event_fts(rowid, event_description) VALUES (new.event_id, new.event_description);
+END;
+
+CREATE TRIGGER IF NOT EXISTS event_fts_delete AFTER DELETE ON event BEGIN
+    INSERT INTO event_fts(event_fts, rowid, event_description) VALUES ('delete', old.event_id, old.event_description);
+END;
+
+CREATE TRIGGER IF NOT EXISTS event_fts_update AFTER UPDATE OF event_description ON event BEGIN
+    INSERT INTO event_fts(event_fts, rowid, event_description) VALUES ('delete', old.event_id, old.event_description);
+    INSERT INTO event_fts(rowid, event_description) VALUES (new.event_id, new.event_description);
+END;
+
 CREATE TABLE IF NOT EXISTS category(
     category_id INTEGER PRIMARY KEY,
 
     primary_name TEXT NOT NULL,
     secondary_name TEXT   -- is allowed to be NULL!
 );
+
+-- The version of this schema, see DatabaseMigrator.
+-- Update it together with the migrations in the "migrations" directory.
+PRAGMA user_version = 2;
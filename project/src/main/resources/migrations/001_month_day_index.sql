@@ -0,0 +1,11 @@
+-- Adds the indexed month_day column of the event table (see create_tables.sql)
+-- to databases that were created without it.
+
+-- A virtual column can be added without rewriting the table,
+-- its values are computed when the index is created.
+ALTER TABLE event ADD COLUMN month_day INTEGER GENERATED ALWAYS AS (
+    CAST(substr(event_date, -5, 2) AS INTEGER) * 100
+    + CAST(substr(event_date, -2) AS INTEGER)) VIRTUAL;
+
+CREATE INDEX IF NOT EXISTS event_month_day_category
+    ON event(month_day, category_id, event_date, event_description);
@@ -0,0 +1,25 @@
+-- Adds the full-text index of the event descriptions (see create_tables.sql)
+-- to databases that were created without it.
+
+CREATE VIRTUAL TABLE IF NOT EXISTS event_fts USING fts5(
+    event_description,
+    content = 'event',
+    content_rowid = 'event_id',
+    tokenize = 'unicode61 remove_diacritics 2',
+    prefix = '2 3');
+
+CREATE TRIGGER IF NOT EXISTS event_fts_insert AFTER INSERT ON event BEGIN
+    INSERT INTO event_fts(rowid, event_description) VALUES (new.event_id, new.event_description);
+END;
+
+CREATE TRIGGER IF NOT EXISTS event_fts_delete AFTER DELETE ON event BEGIN
+    INSERT INTO event_fts(event_fts, rowid, event_description) VALUES ('delete', old.event_id, old.event_description);
+END;
+
+CREATE TRIGGER IF NOT EXISTS event_fts_update AFTER UPDATE OF event_description ON event BEGIN
+    INSERT INTO event_fts(event_fts, rowid, event_description) VALUES ('delete', old.event_id, old.event_description);
+    INSERT INTO event_fts(rowid, event_description) VALUES (new.event_id, new.event_description);
+END;
+
+-- Indexes the existing events. The index is built from scratch in one pass over the table.
+INSERT INTO event_fts(event_fts) VALUES ('rebuild');
@@ -0,0 +1,56 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.datamodel.Event;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that refreshing a directory provider merges appended lines
+ * and new files, and keeps the events when the directory can't be listed.
+ */
+class CSVDirectoryEventProviderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void refreshMergesAppendedLinesAndNewFiles() throws Exception {
+        Path events = Files.createDirectory(this.directory.resolve("today"));
+        Files.writeString(events.resolve("a.csv"), "2001-03-24,one,a/b\n");
+        CSVDirectoryEventProvider provider = new CSVDirectoryEventProvider(events.toString(), "csv",
+                CSVEventProvider.LoadMode.MAPPED, 4);
+
+        Files.writeString(events.resolve("a.csv"), "2001-03-24,two,a/b\n", StandardOpenOption.APPEND);
+        assertTrue(provider.refresh());
+        assertEquals(List.of("one", "two"), descriptions(provider.getEvents()));
+
+        Files.writeString(events.resolve("b.csv"), "--03-24,three,a/b\n");
+        assertTrue(provider.refresh());
+        assertEquals(List.of("one", "two", "three"), descriptions(provider.getEvents()));
+        assertFalse(provider.refresh());
+    }
+
+    @Test
+    void failedListingKeepsTheEvents() throws Exception {
+        Path events = Files.createDirectory(this.directory.resolve("today"));
+        Files.writeString(events.resolve("a.csv"), "2001-03-24,one,a/b\n");
+        CSVDirectoryEventProvider provider = new CSVDirectoryEventProvider(events.toString(), "csv",
+                CSVEventProvider.LoadMode.MAPPED, 4);
+
+        Files.move(events, this.directory.resolve("moved"));
+        assertFalse(provider.refresh());
+        assertEquals(List.of("one"), descriptions(provider.getEvents()));
+    }
+
+    private static List<String> descriptions(List<Event> events) {
+        return events.stream().map(Event::getDescription).toList();
+    }
+}
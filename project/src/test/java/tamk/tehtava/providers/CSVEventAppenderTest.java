@@ -0,0 +1,88 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.Event;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that the events written by CSVEventAppender are read back
+ * unchanged by CSVEventProvider, and that concurrent appenders of
+ * the same file don't lose or mix up lines.
+ */
+class CSVEventAppenderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTripInEveryMode() throws Exception {
+        // The readers turn a CR in a quoted field into a line break, so there are none here.
+        String[] descriptions = {
+            "plain", "back\\slash", "ends with \\", "\\\\double", "a\\\"b", "say \"hi\"",
+            "comma, here", "line\nbreak", "\"", "\\", "\\n is not a newline"
+        };
+        List<Event> events = new ArrayList<>();
+        for (int i = 0; i < descriptions.length; i++) {
+            events.add(EventFactory.makeEvent(i % 2 == 0 ? "2001-03-24" : "--03-24", descriptions[i], "a/b"));
+        }
+        Path file = this.directory.resolve("events.csv");
+        try (CSVEventAppender appender = new CSVEventAppender(file)) {
+            appender.appendAll(events);
+        }
+
+        for (CSVEventProvider.LoadMode mode : CSVEventProvider.LoadMode.values()) {
+            CSVEventProvider provider = new CSVEventProvider(file.toString(), "csv", mode);
+            assertEquals(events, provider.getEvents(), mode.toString());
+        }
+    }
+
+    @Test
+    void concurrentAppendersOfOneFile() throws Exception {
+        Path file = this.directory.resolve("events.csv");
+        int threads = 8;
+        int perThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                writers.add(executor.submit(() -> {
+                    // Small batches, so that the appenders take turns often.
+                    try (CSVEventAppender appender = new CSVEventAppender(file,
+                            CSVEventAppender.Durability.BUFFERED, 7)) {
+                        for (int i = 0; i < perThread; i++) {
+                            appender.append(EventFactory.makeEvent("2001-03-24",
+                                    "writer " + thread + ", event " + i, "a/b"));
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        List<Event> events = new CSVEventProvider(file.toString(), "csv",
+                CSVEventProvider.LoadMode.MAPPED).getEvents();
+        Set<String> descriptions = new HashSet<>();
+        for (Event event : events) {
+            descriptions.add(event.getDescription());
+        }
+        assertEquals(threads * perThread, events.size());
+        assertEquals(threads * perThread, descriptions.size());
+    }
+}
@@ -0,0 +1,101 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.MonthDay;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks that the binary cache gives back the events and index it was
+ * stored with, is ignored for another version of the CSV file, and fails
+ * with an exception rather than running out of memory when it is damaged.
+ */
+class CSVEventCacheTest {
+    // The magic number, the version and the stamp come before the category count.
+    private static final int CATEGORY_COUNT_OFFSET = 2 * Integer.BYTES + 3 * Long.BYTES;
+
+    @TempDir
+    Path directory;
+
+    private CSVEventCache cache;
+    private CSVEventCache.Stamp stamp;
+    private List<Event> events;
+
+    @BeforeEach
+    void storeCache() throws Exception {
+        Path csv = this.directory.resolve("events.csv");
+        Files.writeString(csv, "2001-03-24,one,a/b\n--03-24,two,c\n2020-12-31,three,a/b\n");
+        this.cache = new CSVEventCache(csv);
+        this.stamp = this.cache.stamp();
+        this.events = List.of(
+                EventFactory.makeEvent("2001-03-24", "one", "a/b"),
+                EventFactory.makeEvent("--03-24", "two", "c"),
+                EventFactory.makeEvent("2020-12-31", "three", "a/b"));
+        this.cache.store(this.stamp, this.events, new EventIndex(this.events));
+    }
+
+    @Test
+    void roundTrip() throws Exception {
+        CSVEventCache.Contents contents = this.cache.load(this.stamp);
+        assertNotNull(contents);
+        assertEquals(this.events, contents.events());
+        EventIndex index = new EventIndex(this.events);
+        assertEquals(index.getEventsOfDate(MonthDay.of(3, 24)), contents.index().getEventsOfDate(MonthDay.of(3, 24)));
+        assertEquals(index.getEventsOfCategory(Category.parse("a/b")),
+                contents.index().getEventsOfCategory(Category.parse("a/b")));
+    }
+
+    @Test
+    void stampMismatch() throws Exception {
+        CSVEventCache.Stamp other = new CSVEventCache.Stamp(this.stamp.size(), this.stamp.modified(),
+                this.stamp.checksum() + 1);
+        assertNull(this.cache.load(other));
+    }
+
+    @Test
+    void hugeCountFailsBeforeAllocating() throws Exception {
+        for (int count : new int[] {Integer.MAX_VALUE, -1}) {
+            byte[] bytes = Files.readAllBytes(this.cache.getCachePath());
+            ByteBuffer.wrap(bytes).putInt(CATEGORY_COUNT_OFFSET, count);
+            Files.write(this.cache.getCachePath(), bytes);
+            assertThrows(IOException.class, () -> this.cache.load(this.stamp));
+        }
+    }
+
+    @Test
+    void damagedFileFailsWithException() throws Exception {
+        byte[] original = Files.readAllBytes(this.cache.getCachePath());
+        // Any damage of the contents is either caught or makes different events, never an Error.
+        for (int offset = CATEGORY_COUNT_OFFSET; offset < original.length; offset++) {
+            for (byte value : new byte[] {(byte) 0xFF, (byte) 0x80, 0x7F}) {
+                byte[] damaged = original.clone();
+                damaged[offset] = value;
+                Files.write(this.cache.getCachePath(), damaged);
+                try {
+                    this.cache.load(this.stamp);
+                } catch (IOException | RuntimeException e) {
+                    // CSVEventProvider loads the CSV file instead.
+                }
+            }
+        }
+
+        byte[] truncated = new byte[original.length - 1];
+        System.arraycopy(original, 0, truncated, 0, truncated.length);
+        Files.write(this.cache.getCachePath(), truncated);
+        assertThrows(IOException.class, () -> this.cache.load(this.stamp));
+    }
+}
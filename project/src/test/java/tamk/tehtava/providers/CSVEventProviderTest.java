@@ -0,0 +1,72 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.datamodel.Event;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that refreshing a CSV provider tells appended lines from rewrites,
+ * once it has the checksum of the loaded file.
+ */
+class CSVEventProviderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void refreshAddsAppendedLines() throws Exception {
+        Path file = this.directory.resolve("events.csv");
+        Files.writeString(file, "2001-03-24,one,a/b\n");
+        CSVEventProvider provider = new CSVEventProvider(file.toString(), "csv", CSVEventProvider.LoadMode.MAPPED);
+        // The first refresh takes the checksum of the loaded file.
+        assertFalse(provider.refresh());
+
+        Files.writeString(file, "2001-03-24,two,a/b\n", StandardOpenOption.APPEND);
+        List<Event> appended = new ArrayList<>();
+        assertEquals(CSVEventProvider.RefreshResult.APPENDED, provider.refresh(appended::add));
+        assertEquals(List.of("two"), descriptions(appended));
+        assertEquals(List.of("one", "two"), descriptions(provider.getEvents()));
+    }
+
+    @Test
+    void refreshReloadsChangeBeforeChecksum() throws Exception {
+        Path file = this.directory.resolve("events.csv");
+        Files.writeString(file, "2001-03-24,one,a/b\n");
+        CSVEventProvider provider = new CSVEventProvider(file.toString(), "csv", CSVEventProvider.LoadMode.MAPPED);
+
+        // Loading doesn't read the file again for a checksum, so an append can't be told from a rewrite yet.
+        Files.writeString(file, "2001-03-24,ONE,a/b\n2001-03-24,TWO,a/b\n");
+        assertEquals(CSVEventProvider.RefreshResult.RELOADED, provider.refresh(event -> { }));
+        assertEquals(List.of("ONE", "TWO"), descriptions(provider.getEvents()));
+
+        Files.writeString(file, "2001-03-24,three,a/b\n", StandardOpenOption.APPEND);
+        assertEquals(CSVEventProvider.RefreshResult.APPENDED, provider.refresh(event -> { }));
+        assertEquals(List.of("ONE", "TWO", "three"), descriptions(provider.getEvents()));
+    }
+
+    @Test
+    void refreshReloadsLongerRewrite() throws Exception {
+        Path file = this.directory.resolve("events.csv");
+        Files.writeString(file, "2001-03-24,one,a/b\n");
+        CSVEventProvider provider = new CSVEventProvider(file.toString(), "csv", CSVEventProvider.LoadMode.MAPPED);
+        assertFalse(provider.refresh());
+
+        // Same file, longer, and with a newline where the old contents ended.
+        Files.writeString(file, "2001-03-24,ONE,a/b\n2001-03-24,TWO,a/b\n");
+        assertTrue(provider.refresh());
+        assertEquals(List.of("ONE", "TWO"), descriptions(provider.getEvents()));
+    }
+
+    private static List<String> descriptions(List<Event> events) {
+        return events.stream().map(Event::getDescription).toList();
+    }
+}
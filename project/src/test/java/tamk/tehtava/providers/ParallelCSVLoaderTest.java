@@ -0,0 +1,114 @@
+package tamk.tehtava.providers;
+
+import com.opencsv.CSVReader;
+import com.opencsv.CSVReaderBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.datamodel.Event;
+
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that loading a CSV file in parallel gives the same events as
+ * reading it sequentially, wherever the chunk boundaries fall.
+ */
+class ParallelCSVLoaderTest {
+    // Small chunks put boundaries inside quoted fields and between quotes.
+    private static final long CHUNK_SIZE = 64;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void embeddedQuotesAndNewlines() throws Exception {
+        Path file = this.write("embedded.csv", this.records(new Random(1), 500, false));
+        this.assertSameEvents(file);
+    }
+
+    @Test
+    void strayQuotes() throws Exception {
+        // Quotes in the middle of fields, backslashes and CRs in quoted fields need OpenCSV.
+        for (int seed = 0; seed < 50; seed++) {
+            Path file = this.write("stray-" + seed + ".csv", this.records(new Random(seed), 200, true));
+            this.assertSameEvents(file);
+        }
+    }
+
+    @Test
+    void boundaryAfterClosingQuote() throws Exception {
+        // A quoted field that ends in a doubled quote, split at every offset.
+        String record = "2020-01-01,\"a \"\"b\"\"\nc,\"\"\",cat/sub\n--03-14,\"\"\"\",cat/sub\n";
+        Path file = this.write("closing.csv", record.repeat(20));
+        for (long chunkSize = 1; chunkSize <= record.length(); chunkSize++) {
+            List<Event> events = new ArrayList<>();
+            new ParallelCSVLoader(4, chunkSize).load(file, events::add);
+            assertEquals(this.readSequentially(file), events, "chunk size " + chunkSize);
+        }
+    }
+
+    private void assertSameEvents(Path file) throws Exception {
+        List<Event> sequential = this.readSequentially(file);
+        List<Event> parallel = new ArrayList<>();
+        new ParallelCSVLoader(4, CHUNK_SIZE).load(file, parallel::add);
+        assertEquals(sequential, parallel);
+
+        List<Event> openCSV = new ArrayList<>();
+        try (CSVReader reader = new CSVReaderBuilder(new InputStreamReader(
+                Files.newInputStream(file), StandardCharsets.UTF_8)).build()) {
+            String[] line;
+            while ((line = reader.readNext()) != null) {
+                openCSV.add(CSVEventProvider.makeEvent(line));
+            }
+        }
+        assertEquals(openCSV, parallel);
+    }
+
+    private List<Event> readSequentially(Path file) throws Exception {
+        List<Event> events = new ArrayList<>();
+        try (MappedCSVReader reader = new MappedCSVReader(file)) {
+            reader.read(events::add);
+        }
+        return events;
+    }
+
+    /*
+       Makes records whose descriptions have quoted commas, newlines and
+       doubled quotes, and with stray quotes, also quotes in the middle of
+       fields, text after a closing quote, backslashes and CRs.
+    */
+    private String records(Random random, int count, boolean stray) {
+        String[] quoted = {"\"a, b\"", "\"line\nbreak\"", "\"say \"\"hi\"\"\"", "\"\"\"\"", "\"\""};
+        String[] unquoted = {"plain", "", "two words"};
+        String[] strays = {"ab\"cd\"ef", "\"ab\"cd", "\"a\nb\"c", "a\\\"b", "a\\\\b", "\"x\r\ny\""};
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            String description;
+            int kind = random.nextInt(stray ? 10 : 9);
+            if (kind < 4) {
+                description = quoted[random.nextInt(quoted.length)];
+            } else if (kind < 9) {
+                description = unquoted[random.nextInt(unquoted.length)];
+            } else {
+                description = strays[random.nextInt(strays.length)];
+            }
+            String date = random.nextBoolean() ? "2020-01-0" + (1 + random.nextInt(9)) : "\"--03-14\"";
+            builder.append(date).append(',').append(description).append(",cat/sub")
+                    .append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+        }
+        return builder.toString();
+    }
+
+    private Path write(String name, String contents) throws Exception {
+        Path file = this.directory.resolve(name);
+        Files.writeString(file, contents, StandardCharsets.UTF_8);
+        return file;
+    }
+}
@@ -0,0 +1,91 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.datamodel.Category;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.util.DatabaseMigrator;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.MonthDay;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that every query of SQLiteEventProvider makes the same events
+ * of the rows, including rows whose category is missing or has no
+ * secondary name, and that the triggers keep the full-text index in
+ * step with the events.
+ */
+class SQLiteEventProviderTest {
+    @TempDir
+    Path directory;
+
+    private Path database;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        this.database = this.directory.resolve("events.sqlite3");
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.database)) {
+            DatabaseMigrator.executeScript(connection, "/create_tables.sql");
+            DatabaseMigrator.executeScript(connection, "/insert_categories.sql");
+            try (var s = connection.createStatement()) {
+                s.executeUpdate("INSERT INTO category (category_id, primary_name, secondary_name)"
+                        + " VALUES (77, 'solo', NULL)");
+                s.executeUpdate("INSERT INTO event (event_date, event_description, category_id) VALUES"
+                        + " ('2001-02-03', 'known zebra', 1),"
+                        + " ('2001-02-03', 'solo zebra', 77),"
+                        + " ('--02-03', 'orphan zebra', 999)");
+            }
+        }
+    }
+
+    @Test
+    void categoriesAreTheSameInEveryQuery() {
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString())) {
+            List<String> expected = List.of("known zebra (test/fake)", "orphan zebra (999)", "solo zebra (solo)");
+            assertEquals(expected, describe(provider.getEvents()));
+            assertEquals(expected, describe(provider.getEventsOfDate(MonthDay.of(2, 3))));
+            assertEquals(expected, describe(provider.search("zebra", null, null, 10)));
+            assertEquals(List.of("solo zebra (solo)"), describe(provider.getEventsOfCategory(Category.parse("solo"))));
+        }
+    }
+
+    @Test
+    void triggersKeepFullTextIndexUpToDate() throws Exception {
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString());
+             Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.database);
+             var s = connection.createStatement()) {
+            s.executeUpdate("INSERT INTO event (event_date, event_description, category_id)"
+                    + " VALUES ('2001-05-06', 'Café opening', 2)");
+            assertEquals(List.of("Café opening (apple/macos)"), describe(provider.search("cafe", null, null, 10)));
+            assertEquals(List.of("Café opening (apple/macos)"),
+                    describe(provider.search("caf*", MonthDay.of(5, 6), Category.parse("apple/*"), 10)));
+            assertEquals(List.of(), describe(provider.search("cafe", MonthDay.of(5, 7), null, 10)));
+
+            s.executeUpdate("UPDATE event SET event_description = 'Bakery opening'"
+                    + " WHERE event_description = 'Café opening'");
+            assertEquals(List.of(), describe(provider.search("cafe", null, null, 10)));
+            assertEquals(List.of("Bakery opening (apple/macos)"), describe(provider.search("bakery", null, null, 10)));
+
+            s.executeUpdate("DELETE FROM event WHERE event_description LIKE '%zebra'");
+            assertEquals(List.of(), describe(provider.search("zebra", null, null, 10)));
+            assertEquals(List.of("Bakery opening (apple/macos)"), describe(provider.search("opening", null, null, 10)));
+
+            // Fails if the index doesn't match the descriptions in the event table.
+            s.executeUpdate("INSERT INTO event_fts(event_fts, rank) VALUES ('integrity-check', 1)");
+        }
+    }
+
+    // Describes the events in a stable order, as the queries may return them in any order.
+    private static List<String> describe(List<Event> events) {
+        return events.stream()
+                .map(event -> event.getDescription() + " (" + event.getCategory() + ")")
+                .sorted()
+                .toList();
+    }
+}
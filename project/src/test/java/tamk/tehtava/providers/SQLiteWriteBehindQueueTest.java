@@ -0,0 +1,138 @@
+package tamk.tehtava.providers;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.util.DatabaseMigrator;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the write-behind queue writes its events when flushed or
+ * closed, without waiting for the delay, and that the future of every
+ * event is completed, also when its transaction fails.
+ */
+class SQLiteWriteBehindQueueTest {
+    // Longer than any test, so that only flushing and closing write the events.
+    private static final long LONG_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @TempDir
+    Path directory;
+
+    private Path database;
+
+    @BeforeEach
+    void createDatabase() throws Exception {
+        this.database = this.directory.resolve("events.sqlite3");
+        try (Connection connection = this.connect()) {
+            DatabaseMigrator.executeScript(connection, "/create_tables.sql");
+            DatabaseMigrator.executeScript(connection, "/insert_categories.sql");
+        }
+    }
+
+    @Test
+    void flushWritesQueuedEvents() throws Exception {
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString());
+             SQLiteWriteBehindQueue queue = new SQLiteWriteBehindQueue(provider, 1000, LONG_DELAY_MILLIS)) {
+            CompletableFuture<Boolean> known = queue.add(event("known", "test/fake"));
+            CompletableFuture<Boolean> unknown = queue.add(event("unknown", "no/such"));
+            assertTrue(queue.flush().get(10, TimeUnit.SECONDS));
+
+            assertTrue(known.getNow(null));
+            assertFalse(unknown.getNow(null));
+            assertEquals(List.of("known"), this.descriptions());
+        }
+    }
+
+    @Test
+    void closeWritesRemainingEvents() throws Exception {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString())) {
+            SQLiteWriteBehindQueue queue = new SQLiteWriteBehindQueue(provider, 7, LONG_DELAY_MILLIS);
+            for (int i = 0; i < 100; i++) {
+                results.add(queue.add(event("event " + i, "test/fake")));
+            }
+            queue.close();
+
+            for (CompletableFuture<Boolean> result : results) {
+                assertTrue(result.getNow(null));
+            }
+            assertEquals(100, this.descriptions().size());
+            assertThrows(ExecutionException.class, () -> queue.add(event("late", "test/fake")).get());
+        }
+    }
+
+    @Test
+    void providerCloseWritesAsyncEvents() throws Exception {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>();
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString())) {
+            for (int i = 0; i < 100; i++) {
+                results.add(provider.addEventAsync(event("event " + i, "apple/macos")));
+            }
+        }
+        for (CompletableFuture<Boolean> result : results) {
+            assertTrue(result.getNow(null));
+        }
+        assertEquals(100, this.descriptions().size());
+    }
+
+    @Test
+    void failedTransactionCompletesEveryFuture() throws Exception {
+        try (Connection connection = this.connect(); var statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TRIGGER refuse BEFORE INSERT ON event"
+                    + " WHEN NEW.event_description = 'refused'"
+                    + " BEGIN SELECT RAISE(ABORT, 'refused by test'); END");
+        }
+        try (SQLiteEventProvider provider = new SQLiteEventProvider(this.database.toString());
+             SQLiteWriteBehindQueue queue = new SQLiteWriteBehindQueue(provider, 1000, LONG_DELAY_MILLIS)) {
+            // The three are in one transaction, which is rolled back.
+            CompletableFuture<Boolean> before = queue.add(event("before", "test/fake"));
+            CompletableFuture<Boolean> refused = queue.add(event("refused", "test/fake"));
+            CompletableFuture<Boolean> flushed = queue.flush();
+            for (CompletableFuture<Boolean> result : List.of(before, refused, flushed)) {
+                assertThrows(ExecutionException.class, () -> result.get(10, TimeUnit.SECONDS));
+            }
+
+            // The writer goes on with the next transaction.
+            CompletableFuture<Boolean> after = queue.add(event("after", "test/fake"));
+            assertTrue(queue.flush().get(10, TimeUnit.SECONDS));
+            assertTrue(after.getNow(null));
+            assertEquals(List.of("after"), this.descriptions());
+        }
+    }
+
+    private static Event event(String description, String category) {
+        return EventFactory.makeEvent("2001-03-24", description, category);
+    }
+
+    private Connection connect() throws Exception {
+        return DriverManager.getConnection("jdbc:sqlite:" + this.database);
+    }
+
+    // The descriptions of the events in the database, in the order they were added.
+    private List<String> descriptions() throws Exception {
+        List<String> descriptions = new ArrayList<>();
+        try (Connection connection = this.connect();
+             var statement = connection.createStatement();
+             var rs = statement.executeQuery("SELECT event_description FROM event ORDER BY event_id")) {
+            while (rs.next()) {
+                descriptions.add(rs.getString(1));
+            }
+        }
+        return descriptions;
+    }
+}
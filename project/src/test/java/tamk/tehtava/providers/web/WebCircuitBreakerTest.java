@@ -0,0 +1,126 @@
+package tamk.tehtava.providers.web;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that the circuit opens after the failures in a row, lets exactly
+ * one trial request through after the cooldown, opens again if the trial
+ * fails and closes if it succeeds, and that its state lasts in the file.
+ */
+class WebCircuitBreakerTest {
+    private static final int THRESHOLD = 3;
+    private static final Duration COOLDOWN = Duration.ofSeconds(10);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void opensAfterThreshold() {
+        WebCircuitBreaker breaker = new WebCircuitBreaker(null, THRESHOLD, COOLDOWN);
+        for (int i = 1; i < THRESHOLD; i++) {
+            breaker.recordFailure(1000);
+            assertTrue(breaker.allowsRequest(1000));
+        }
+        breaker.recordFailure(1000);
+        assertFalse(breaker.allowsRequest(1000));
+        assertFalse(breaker.allowsRequest(1000 + COOLDOWN.toMillis() - 1));
+        assertEquals(1000 + COOLDOWN.toMillis(), breaker.getOpenUntilMillis());
+    }
+
+    @Test
+    void successResetsFailures() {
+        WebCircuitBreaker breaker = new WebCircuitBreaker(null, THRESHOLD, COOLDOWN);
+        for (int i = 1; i < THRESHOLD; i++) {
+            breaker.recordFailure(1000);
+        }
+        breaker.recordSuccess();
+        breaker.recordFailure(1000);
+        assertTrue(breaker.allowsRequest(1000));
+    }
+
+    @Test
+    void oneConcurrentTrialAfterCooldown() throws Exception {
+        WebCircuitBreaker breaker = this.openBreaker(null);
+        long afterCooldown = breaker.getOpenUntilMillis();
+        int callers = 32;
+        ExecutorService executor = Executors.newFixedThreadPool(callers);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<Boolean>> allowed = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                allowed.add(executor.submit(() -> {
+                    start.await();
+                    return breaker.allowsRequest(afterCooldown);
+                }));
+            }
+            start.countDown();
+            int trials = 0;
+            for (Future<Boolean> result : allowed) {
+                if (result.get()) {
+                    trials++;
+                }
+            }
+            assertEquals(1, trials);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void failedTrialOpensAgain() {
+        WebCircuitBreaker breaker = this.openBreaker(null);
+        long afterCooldown = breaker.getOpenUntilMillis();
+        assertTrue(breaker.allowsRequest(afterCooldown));
+        breaker.recordFailure(afterCooldown);
+        assertFalse(breaker.allowsRequest(afterCooldown));
+        assertEquals(afterCooldown + COOLDOWN.toMillis(), breaker.getOpenUntilMillis());
+    }
+
+    @Test
+    void successfulTrialCloses() {
+        WebCircuitBreaker breaker = this.openBreaker(null);
+        long afterCooldown = breaker.getOpenUntilMillis();
+        assertTrue(breaker.allowsRequest(afterCooldown));
+        assertFalse(breaker.allowsRequest(afterCooldown));
+        breaker.recordSuccess();
+        assertTrue(breaker.allowsRequest(afterCooldown));
+        assertTrue(breaker.allowsRequest(afterCooldown));
+        assertEquals(0, breaker.getOpenUntilMillis());
+    }
+
+    @Test
+    void stateLastsInFile() {
+        Path stateFile = this.directory.resolve("state").resolve("circuit.properties");
+        WebCircuitBreaker breaker = this.openBreaker(stateFile);
+
+        WebCircuitBreaker next = new WebCircuitBreaker(stateFile, THRESHOLD, COOLDOWN);
+        assertEquals(breaker.getOpenUntilMillis(), next.getOpenUntilMillis());
+        assertFalse(next.allowsRequest(1000));
+
+        next.recordSuccess();
+        assertTrue(new WebCircuitBreaker(stateFile, THRESHOLD, COOLDOWN).allowsRequest(1000));
+    }
+
+    // A breaker whose circuit was opened at 1000 ms.
+    private WebCircuitBreaker openBreaker(Path stateFile) {
+        WebCircuitBreaker breaker = new WebCircuitBreaker(stateFile, THRESHOLD, COOLDOWN);
+        for (int i = 0; i < THRESHOLD; i++) {
+            breaker.recordFailure(1000);
+        }
+        return breaker;
+    }
+}
@@ -0,0 +1,111 @@
+package tamk.tehtava.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that migrating a database with the schema of the first version
+ * gives it the schema and version of create_tables.sql, indexes its
+ * existing events, and that migrating it again does nothing.
+ */
+class DatabaseMigratorTest {
+    // The tables of the first version, before the migrations.
+    private static final String[] BASELINE_SCHEMA = {
+        """
+        CREATE TABLE event(
+            event_id INTEGER PRIMARY KEY,
+            event_date DATE NOT NULL,
+            event_description TEXT NOT NULL,
+            category_id INTEGER NOT NULL,
+            FOREIGN KEY (category_id) REFERENCES category(category_id))""",
+        """
+        CREATE TABLE category(
+            category_id INTEGER PRIMARY KEY,
+            primary_name TEXT NOT NULL,
+            secondary_name TEXT)""",
+        "INSERT INTO category VALUES (1, 'test', 'fake')",
+        "INSERT INTO event (event_date, event_description, category_id) VALUES"
+                + " ('2001-03-24', 'spring equinox party', 1), ('--12-31', 'new year''s eve', 1)"
+    };
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void migrateBaselineDatabase() throws Exception {
+        String url = this.baselineDatabase();
+        assertEquals(2, DatabaseMigrator.migrate(url));
+
+        try (Connection connection = DriverManager.getConnection(url);
+             Connection latest = this.latestDatabase()) {
+            assertEquals(version(latest), version(connection));
+            assertEquals(schema(latest), schema(connection));
+            assertEquals(List.of("324", "1231"), query(connection, "SELECT month_day FROM event ORDER BY event_id"));
+            assertEquals(List.of("spring equinox party"),
+                    query(connection, "SELECT event_description FROM event_fts WHERE event_fts MATCH 'equi*'"));
+        }
+        assertEquals(0, DatabaseMigrator.migrate(url));
+    }
+
+    @Test
+    void newerDatabaseIsLeftAlone() throws Exception {
+        String url = this.baselineDatabase();
+        try (Connection connection = DriverManager.getConnection(url)) {
+            connection.createStatement().executeUpdate("PRAGMA user_version = 99");
+        }
+        assertEquals(0, DatabaseMigrator.migrate(url));
+        try (Connection connection = DriverManager.getConnection(url)) {
+            assertEquals(99, version(connection));
+            assertEquals(List.of("category", "event"), schema(connection));
+        }
+    }
+
+    private String baselineDatabase() throws SQLException {
+        String url = "jdbc:sqlite:" + this.directory.resolve("baseline.sqlite3");
+        try (Connection connection = DriverManager.getConnection(url);
+             var statement = connection.createStatement()) {
+            for (String sql : BASELINE_SCHEMA) {
+                statement.executeUpdate(sql);
+            }
+        }
+        return url;
+    }
+
+    // A database created with create_tables.sql, as a new installation does.
+    private Connection latestDatabase() throws Exception {
+        Path file = this.directory.resolve("latest.sqlite3");
+        Connection connection = DriverManager.getConnection("jdbc:sqlite:" + file);
+        DatabaseMigrator.executeScript(connection, "/create_tables.sql");
+        return connection;
+    }
+
+    private static int version(Connection connection) throws SQLException {
+        return Integer.parseInt(query(connection, "PRAGMA user_version").get(0));
+    }
+
+    // The names of the tables, indexes and triggers, without the internal tables of SQLite and FTS5.
+    private static List<String> schema(Connection connection) throws SQLException {
+        return query(connection, "SELECT name FROM sqlite_schema WHERE name NOT LIKE 'sqlite_%'"
+                + " AND name NOT LIKE 'event_fts_%' OR type = 'trigger' ORDER BY name");
+    }
+
+    private static List<String> query(Connection connection, String sql) throws SQLException {
+        List<String> values = new ArrayList<>();
+        try (var statement = connection.createStatement();
+             var rs = statement.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,364 @@
+package tamk.tehtava.util;
+
+import tamk.tehtava.EventFactory;
+import tamk.tehtava.datamodel.Event;
+import tamk.tehtava.providers.SQLiteConnectionPool;
+import tamk.tehtava.providers.SQLiteEventProvider;
+import tamk.tehtava.providers.SQLiteProfile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.MonthDay;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures the latency of the queries of SQLiteEventProvider on generated
+ * databases of different sizes. Each query is run the way the provider
+ * used to run it, with a new connection and SQL built by concatenation,
+ * and the way it runs now, with a pooled connection and a cached
+ * prepared statement with bound parameters. The events of a date are
+ * also looked up with the indexed month_day column.
+ *
+ * The benchmark is kept with the tests, so that it isn't in the jar.
+ * Run it on the test classpath with the numbers of rows as arguments,
+ * by default 10000 and 1000000:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=tamk.tehtava.util.SQLiteBenchmark -Dexec.args="10000 1000000"
+ * </pre>
+ *
+ * With "profiles" as the first argument, compares the SQLiteProfiles instead,
+ * on a database with the specified number of rows, by default 1000000:
+ * the latency of opening the database and running one query, like a command
+ * does, the latency of a query on an open pool, like a service does, the
+ * same while another thread keeps adding events, and the rate of adding
+ * events in transactions of 1000.
+ *
+ * With "writes" as the first argument, compares adding events one at a time
+ * with SQLiteEventProvider.addEvent(), each in its own transaction, with adding
+ * them from several threads through the write-behind queue with addEventAsync().
+ */
+public class SQLiteBenchmark {
+    private static final int CATEGORY_COUNT = 4;
+
+    // Each measurement runs at least this many times, and for at least this long.
+    private static final int MIN_ITERATIONS = 20;
+    private static final long MIN_NANOS = 2_000_000_000L;
+
+    private interface Query {
+        int run(MonthDay monthDay) throws SQLException;
+    }
+
+    public static void main(String[] args) throws IOException, SQLException, InterruptedException {
+        if (args.length > 0 && args[0].equals("profiles")) {
+            compareProfiles(args.length > 1 ? Long.parseLong(args[1]) : 1_000_000);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("writes")) {
+            compareWrites(args.length > 1 ? Integer.parseInt(args[1]) : 200_000);
+            return;
+        }
+        long[] sizes = args.length == 0
+                ? new long[] {10_000, 1_000_000}
+                : Arrays.stream(args).mapToLong(Long::parseLong).toArray();
+
+        System.out.printf("%-10s %-22s %14s %14s%n", "rows", "query", "before (us)", "after (us)");
+        for (long size : sizes) {
+            Path database = Files.createTempFile("events", ".sqlite3");
+            try {
+                String url = "jdbc:sqlite:" + database;
+                populate(url, size);
+                benchmark(url, size);
+            } finally {
+                Files.deleteIfExists(database);
+            }
+        }
+    }
+
+    private static void benchmark(String url, long size) throws SQLException {
+        String categoriesSql = "select category_id, primary_name, secondary_name from category";
+        String dateSql = "SELECT event_date, event_description, category_id FROM event"
+                + " WHERE substr(event_date, -5) = ";
+
+        Query categoriesBefore = monthDay -> {
+            try (var connection = DriverManager.getConnection(url);
+                 var statement = connection.createStatement();
+                 var rs = statement.executeQuery(categoriesSql)) {
+                return count(rs);
+            }
+        };
+        Query dateBefore = monthDay -> {
+            try (var connection = DriverManager.getConnection(url);
+                 var statement = connection.createStatement();
+                 var rs = statement.executeQuery(dateSql + "'" + monthDay.toString().substring(2) + "'")) {
+                return count(rs);
+            }
+        };
+
+        try (SQLiteConnectionPool pool = new SQLiteConnectionPool(url)) {
+            Query categoriesAfter = monthDay -> {
+                try (var lease = pool.reader();
+                     var rs = lease.prepare(categoriesSql).executeQuery()) {
+                    return count(rs);
+                }
+            };
+            Query dateAfter = monthDay -> {
+                try (var lease = pool.reader()) {
+                    var statement = lease.prepare(dateSql + "?");
+                    statement.setString(1, monthDay.toString().substring(2));
+                    try (var rs = statement.executeQuery()) {
+                        return count(rs);
+                    }
+                }
+            };
+
+            Query dateIndexed = monthDay -> {
+                try (var lease = pool.reader()) {
+                    var statement = lease.prepare("SELECT event_date, event_description, category_id"
+                            + " FROM event WHERE month_day = ?");
+                    statement.setInt(1, SQLiteEventProvider.toMonthDayValue(monthDay));
+                    try (var rs = statement.executeQuery()) {
+                        return count(rs);
+                    }
+                }
+            };
+
+            System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "categories",
+                    measure(categoriesBefore), measure(categoriesAfter));
+            double before = measure(dateBefore);
+            System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "events of date",
+                    before, measure(dateAfter));
+            System.out.printf("%-10d %-22s %14.1f %14.1f%n", size, "events of date, index",
+                    before, measure(dateIndexed));
+        }
+    }
+
+    private static final String DATE_SQL = "SELECT event_date, event_description, category_id"
+            + " FROM event WHERE month_day = ?";
+
+    private static void compareProfiles(long size) throws IOException, SQLException, InterruptedException {
+        Path template = Files.createTempFile("events", ".sqlite3");
+        try {
+            populate("jdbc:sqlite:" + template, size);
+            System.out.printf("%-10s %-12s %16s %12s %18s %16s%n", "rows", "profile",
+                    "open+query (us)", "query (us)", "while writing (us)", "insert (rows/s)");
+            for (SQLiteProfile profile : SQLiteProfile.values()) {
+                // Each profile gets a copy of the database, as WAL mode stays on in the file.
+                Path database = Files.createTempFile("events-" + profile, ".sqlite3");
+                try {
+                    Files.copy(template, database, StandardCopyOption.REPLACE_EXISTING);
+                    compareProfile(profile, database.toString(), size);
+                } finally {
+                    for (String suffix : new String[] {"", "-wal", "-shm"}) {
+                        Files.deleteIfExists(Path.of(database + suffix));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(template);
+        }
+    }
+
+    private static void compareProfile(SQLiteProfile profile, String fileName, long size)
+            throws SQLException, InterruptedException {
+        String url = profile.url(fileName);
+
+        Query openAndQuery = monthDay -> {
+            try (SQLiteConnectionPool pool = new SQLiteConnectionPool(url, 1, profile)) {
+                return queryDate(pool, monthDay);
+            }
+        };
+        double cold = measure(openAndQuery);
+
+        try (SQLiteConnectionPool pool = new SQLiteConnectionPool(url, SQLiteConnectionPool.DEFAULT_SIZE, profile)) {
+            double warm = measure(monthDay -> queryDate(pool, monthDay));
+
+            // An immutable database must not be written at all.
+            if (profile == SQLiteProfile.IMMUTABLE) {
+                System.out.printf("%-10d %-12s %16.1f %12.1f %18s %16s%n", size, profile, cold, warm, "n/a", "n/a");
+                return;
+            }
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            Thread writer = new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        insertEvents(pool, 1, 1);
+                    }
+                } catch (SQLException e) {
+                    System.err.println("Error adding events: " + e.getMessage());
+                }
+            });
+            writer.start();
+            String contended;
+            try {
+                contended = String.format("%.1f", measure(monthDay -> queryDate(pool, monthDay)));
+            } catch (SQLException e) {
+                // Without WAL, a query may find the database locked by the writer for too long.
+                contended = "locked";
+            } finally {
+                writing.set(false);
+                writer.join();
+            }
+
+            long rows = 100_000;
+            long start = System.nanoTime();
+            insertEvents(pool, rows, 1000);
+            double rate = rows * 1e9 / (System.nanoTime() - start);
+            System.out.printf("%-10d %-12s %16.1f %12.1f %18s %16.0f%n", size, profile, cold, warm, contended, rate);
+        }
+    }
+
+    private static void compareWrites(int count) throws IOException, SQLException, InterruptedException {
+        Path database = Files.createTempFile("events", ".sqlite3");
+        try {
+            populate("jdbc:sqlite:" + database, 0);
+            try (SQLiteEventProvider provider = new SQLiteEventProvider(database.toString())) {
+                // Adding events one at a time is slow, so fewer of them are added.
+                int syncCount = Math.max(1, count / 100);
+                long start = System.nanoTime();
+                for (int i = 0; i < syncCount; i++) {
+                    provider.addEvent(makeEvent(i));
+                }
+                double syncRate = syncCount * 1e9 / (System.nanoTime() - start);
+
+                int threads = 4;
+                List<CompletableFuture<Boolean>> futures = Collections.synchronizedList(new ArrayList<>());
+                List<Thread> producers = new ArrayList<>();
+                start = System.nanoTime();
+                for (int t = 0; t < threads; t++) {
+                    int first = t;
+                    Thread producer = new Thread(() -> {
+                        for (int i = first; i < count; i += threads) {
+                            futures.add(provider.addEventAsync(makeEvent(i)));
+                        }
+                    });
+                    producer.start();
+                    producers.add(producer);
+                }
+                for (Thread producer : producers) {
+                    producer.join();
+                }
+                long added = futures.stream().filter(CompletableFuture::join).count();
+                double asyncRate = added * 1e9 / (System.nanoTime() - start);
+
+                System.out.printf("%-34s %10s %16s%n", "method", "events", "events/s");
+                System.out.printf("%-34s %10d %16.0f%n", "addEvent", syncCount, syncRate);
+                System.out.printf("%-34s %10d %16.0f%n", "addEventAsync, " + threads + " threads", added, asyncRate);
+            }
+        } finally {
+            Files.deleteIfExists(database);
+        }
+    }
+
+    private static Event makeEvent(int i) {
+        return EventFactory.makeEvent(MonthDayOrdinal.toMonthDay(i % MonthDayOrdinal.COUNT).toString(),
+                "Added event number " + i, "test/fake");
+    }
+
+    private static int queryDate(SQLiteConnectionPool pool, MonthDay monthDay) throws SQLException {
+        try (var lease = pool.reader()) {
+            var statement = lease.prepare(DATE_SQL);
+            statement.setInt(1, SQLiteEventProvider.toMonthDayValue(monthDay));
+            try (var rs = statement.executeQuery()) {
+                return count(rs);
+            }
+        }
+    }
+
+    // Adds generated annual events on the writer connection, committing every transactionSize rows.
+    private static void insertEvents(SQLiteConnectionPool pool, long rows, int transactionSize) throws SQLException {
+        Random random = new Random(rows);
+        try (var lease = pool.writer()) {
+            lease.connection().setAutoCommit(false);
+            var insert = lease.prepare(
+                    "INSERT INTO event (event_date, event_description, category_id) VALUES (?, ?, ?)");
+            for (long i = 0; i < rows; i++) {
+                insert.setString(1, MonthDayOrdinal.toMonthDay(random.nextInt(MonthDayOrdinal.COUNT)).toString());
+                insert.setString(2, "Added event number " + i);
+                insert.setInt(3, 1 + random.nextInt(CATEGORY_COUNT));
+                insert.addBatch();
+                if (i % transactionSize == transactionSize - 1 || i == rows - 1) {
+                    insert.executeBatch();
+                    lease.connection().commit();
+                }
+            }
+        }
+    }
+
+    // Gets the median latency of the query in microseconds, after warming up.
+    private static double measure(Query query) throws SQLException {
+        Random random = new Random(1);
+        for (int i = 0; i < MIN_ITERATIONS; i++) {
+            query.run(MonthDayOrdinal.toMonthDay(random.nextInt(MonthDayOrdinal.COUNT)));
+        }
+
+        long[] times = new long[1024];
+        int iterations = 0;
+        long start = System.nanoTime();
+        while (iterations < MIN_ITERATIONS || System.nanoTime() - start < MIN_NANOS) {
+            MonthDay monthDay = MonthDayOrdinal.toMonthDay(random.nextInt(MonthDayOrdinal.COUNT));
+            long queryStart = System.nanoTime();
+            query.run(monthDay);
+            if (iterations == times.length) {
+                times = Arrays.copyOf(times, times.length * 2);
+            }
+            times[iterations++] = System.nanoTime() - queryStart;
+        }
+        Arrays.sort(times, 0, iterations);
+        return times[iterations / 2] / 1000.0;
+    }
+
+    private static int count(ResultSet rs) throws SQLException {
+        int rows = 0;
+        while (rs.next()) {
+            rows++;
+        }
+        return rows;
+    }
+
+    /*
+       Creates the tables of the application's schema and fills the event
+       table with random singular and annual events in one transaction.
+    */
+    private static void populate(String url, long size) throws IOException, SQLException {
+        try (Connection connection = DriverManager.getConnection(url)) {
+            DatabaseMigrator.executeScript(connection, "/create_tables.sql");
+            DatabaseMigrator.executeScript(connection, "/insert_categories.sql");
+
+            connection.setAutoCommit(false);
+            Random random = new Random(size);
+            try (var insert = connection.prepareStatement(
+                    "INSERT INTO event (event_date, event_description, category_id) VALUES (?, ?, ?)")) {
+                for (long i = 0; i < size; i++) {
+                    MonthDay monthDay = MonthDayOrdinal.toMonthDay(random.nextInt(MonthDayOrdinal.COUNT));
+                    // Singular events are in leap years, so that February 29th is valid.
+                    String date = random.nextBoolean()
+                            ? monthDay.toString()
+                            : monthDay.atYear(1904 + 4 * random.nextInt(30)).toString();
+                    insert.setString(1, date);
+                    insert.setString(2, "Event number " + i);
+                    insert.setInt(3, 1 + random.nextInt(CATEGORY_COUNT));
+                    insert.addBatch();
+                    if (i % 10_000 == 9_999) {
+                        insert.executeBatch();
+                    }
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        }
+    }
+}